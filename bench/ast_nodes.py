@@ -0,0 +1,79 @@
+# Print the AST nodes of the Python files of a directory as CPython parses them, one line per file:
+# the path of the file, a tab and the names of the nodes in the order of their positions in the code,
+# with :CONTEXT for the nodes which have one (Name:Load...). The names are the ones of the XML of
+# pyRegurgitator (Num, Str, NameConstant... for the constants). ParserCheck compares the lines with the
+# trees of PySourceParser.
+#
+# python3 bench/ast_nodes.py INPUT_DIR > nodes.txt
+import ast
+import os
+import sys
+
+# operators and contexts, which are not nodes of the XML or are given as the context of their node
+OPERATORS = set("Add Sub Mult MatMult Div Mod Pow LShift RShift BitOr BitXor BitAnd FloorDiv And Or Invert Not UAdd "
+                "USub Eq NotEq Lt LtE Gt GtE Is IsNot In NotIn Load Store Del".split())
+
+
+def node_name(node):
+    name = type(node).__name__
+    if name != 'Constant':
+        return name
+    value = node.value
+    if isinstance(value, bool) or value is None:
+        return 'NameConstant'
+    if isinstance(value, str):
+        return 'Str'
+    if isinstance(value, bytes):
+        return 'Bytes'
+    if value is Ellipsis:
+        return 'Ellipsis'
+    return 'Num'
+
+
+def collect(node, depth, nodes):
+    name = type(node).__name__
+    if name in OPERATORS or not name[0].isupper():
+        pass
+    elif hasattr(node, 'lineno'):
+        line, column = node.lineno, node.col_offset
+        # a decorated definition starts at its first decorator, before its @
+        if getattr(node, 'decorator_list', None):
+            decorator = node.decorator_list[0]
+            line, column = decorator.lineno, decorator.col_offset - 1
+        if hasattr(node, 'ctx'):
+            name = node_name(node) + ':' + type(node.ctx).__name__
+        else:
+            name = node_name(node)
+        nodes.append(((line, column, -node.end_lineno, -node.end_col_offset, depth), name))
+    elif name != 'Module':
+        # nodes without position (arguments, keyword...) are before the nodes with one
+        nodes.append(((0, 0, 0, 0, depth), name))
+    # the values of an f-string are only text in the XML
+    if name == 'JoinedStr':
+        return
+    for child in ast.iter_child_nodes(node):
+        collect(child, depth + 1, nodes)
+
+
+def main(directory):
+    for root, dirs, files in os.walk(directory):
+        dirs.sort()
+        for file_name in sorted(files):
+            if not file_name.endswith('.py'):
+                continue
+            path = os.path.join(root, file_name)
+            try:
+                with open(path, encoding='utf-8') as source:
+                    tree = ast.parse(source.read())
+            except (SyntaxError, UnicodeDecodeError, ValueError):
+                continue
+            nodes = []
+            collect(tree, 0, nodes)
+            nodes.sort(key=lambda node: node[0])
+            print(path + '\t' + ' '.join(node[1] for node in nodes))
+
+
+if __name__ == '__main__':
+    if len(sys.argv) != 2:
+        sys.exit('usage: python3 ast_nodes.py INPUT_DIR')
+    main(sys.argv[1])
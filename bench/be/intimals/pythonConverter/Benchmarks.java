@@ -0,0 +1,212 @@
+package be.intimals.pythonConverter;
+
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static be.intimals.pythonConverter.Utils.*;
+
+/**
+ * Benchmarks of the phases of the conversion of one file.
+ * Each benchmark is run on each input file: first some warm up operations, then the measured ones.
+ * The preparation of an operation (e.g. reading the document to update) is not measured.
+ * The results are the throughput and the bytes allocated by one operation.
+ *
+ * java be.intimals.pythonConverter.Benchmarks [-warmup N] [-iterations N] [-only NAME] INPUT_DIR...
+ */
+public class Benchmarks {
+    private static final Pattern TOKEN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*|\\*\\*|[-+*/]");
+
+    private int warmup = 5;
+    private int iterations = 10;
+    private String only = null;
+    private File tmpDir;
+
+    /**
+     * one phase of the conversion
+     */
+    private interface Benchmark {
+        String getName();
+        /** prepare one operation on an input file, not measured */
+        Object setup(String xmlFile) throws Exception;
+        /** the measured operation */
+        void run(Object state) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Benchmarks benchmarks = new Benchmarks();
+        List<String> dirs = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("-warmup") && i + 1 < args.length) {
+                benchmarks.warmup = Integer.valueOf(args[++i]);
+            } else if (args[i].equals("-iterations") && i + 1 < args.length) {
+                benchmarks.iterations = Integer.valueOf(args[++i]);
+            } else if (args[i].equals("-only") && i + 1 < args.length) {
+                benchmarks.only = args[++i];
+            } else {
+                dirs.add(args[i]);
+            }
+        }
+        if (dirs.isEmpty())
+            dirs.add("sample_input");
+        ArrayList<String> files = new ArrayList<>();
+        for (String dir : dirs)
+            populateFileList(new File(dir), files);
+        Collections.sort(files);
+        benchmarks.run(files);
+    }
+
+    private void run(List<String> files) throws Exception {
+        tmpDir = Files.createTempDirectory("pyConverterBench").toFile();
+        try {
+            System.out.println(String.format("%-16s %-32s %10s %12s %14s", "Benchmark", "Input", "ops/s", "ms/op", "alloc B/op"));
+            for (Benchmark benchmark : getBenchmarks()) {
+                if (only != null && !only.equals(benchmark.getName()))
+                    continue;
+                for (String xmlFile : files)
+                    measure(benchmark, xmlFile);
+            }
+        } finally {
+            for (File file : tmpDir.listFiles())
+                file.delete();
+            tmpDir.delete();
+        }
+    }
+
+    private List<Benchmark> getBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<>();
+        benchmarks.add(new Benchmark() {
+            public String getName() { return "readTree"; }
+            public Object setup(String xmlFile) throws Exception {
+                try (InputStream is = getXMLStream(xmlFile)) {
+                    return is.readAllBytes();
+                }
+            }
+            public void run(Object state) throws Exception {
+                PositionalXMLReader.readTree(new ByteArrayInputStream((byte[]) state));
+            }
+        });
+        benchmarks.add(new Benchmark() {
+            public String getName() { return "parsePython"; }
+            public Object setup(String xmlFile) throws Exception {
+                return readPySource(getPyFile(xmlFile));
+            }
+            public void run(Object state) {
+                PySourceParser.parse((String) state, "input.py");
+            }
+        });
+        benchmarks.add(new Benchmark() {
+            public String getName() { return "updateNodes"; }
+            public Object setup(String xmlFile) throws Exception {
+                return new Object[]{readTree(xmlFile), readColumnFinder(xmlFile)};
+            }
+            public void run(Object state) {
+                Object[] s = (Object[]) state;
+                new TransformPyAST().transformTree((CompactTree) s[0], (PyColumnFinder) s[1]);
+            }
+        });
+        benchmarks.add(new Benchmark() {
+            public String getName() { return "findColumns"; }
+            public Object setup(String xmlFile) {
+                return readPyFile(getPyFile(xmlFile));
+            }
+            public void run(Object state) {
+                // find each identifier and operator of each line, in order, like the conversion does
+                PyLineIndex pyFile = (PyLineIndex) state;
+                PyColumnFinder columnFinder = new PyColumnFinder(pyFile);
+                for (int lineNr = 1; lineNr <= pyFile.size(); ++lineNr) {
+                    Matcher matcher = TOKEN.matcher(pyFile.getLine(lineNr));
+                    while (matcher.find()) {
+                        columnFinder.findLineColNumbers(lineNr, matcher.group());
+                        columnFinder.collectLinesVariables(lineNr, matcher.group());
+                    }
+                }
+            }
+        });
+        benchmarks.add(new Benchmark() {
+            public String getName() { return "writeToFile"; }
+            public Object setup(String xmlFile) throws Exception {
+                return transformTree(xmlFile);
+            }
+            public void run(Object state) throws Exception {
+                try (Writer writer = getXMLWriter(new File(tmpDir, "output.xml").getPath())) {
+                    ((CompactTree) state).write(new XmlFormatter(writer));
+                }
+            }
+        });
+        benchmarks.add(new Benchmark() {
+            public String getName() { return "formatXML"; }
+            public Object setup(String xmlFile) throws Exception {
+                return transformTree(xmlFile);
+            }
+            public void run(Object state) throws Exception {
+                ((CompactTree) state).write(new XmlFormatter(new NullWriter()));
+            }
+        });
+        benchmarks.add(new Benchmark() {
+            public String getName() { return "streamTransform"; }
+            public Object setup(String xmlFile) {
+                return new Object[]{xmlFile, readColumnFinder(xmlFile)};
+            }
+            public void run(Object state) throws Exception {
+                Object[] s = (Object[]) state;
+                new StreamTransformPyAST((PyColumnFinder) s[1]).transform((String) s[0], new File(tmpDir, "output.xml").getPath());
+            }
+        });
+        return benchmarks;
+    }
+
+    /**
+     * run the warm up and measured operations of a benchmark on a file and print the results
+     */
+    private void measure(Benchmark benchmark, String xmlFile) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < warmup; ++i)
+            benchmark.run(benchmark.setup(xmlFile));
+        long time = 0;
+        long allocated = 0;
+        for (int i = 0; i < iterations; ++i) {
+            Object state = benchmark.setup(xmlFile);
+            long bytes = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            benchmark.run(state);
+            time += System.nanoTime() - start;
+            allocated += threads.getThreadAllocatedBytes(threadId) - bytes;
+        }
+        double msPerOp = time / 1e6 / iterations;
+        System.out.println(String.format("%-16s %-32s %10.1f %12.3f %14d", benchmark.getName(),
+                new File(xmlFile).getName(), 1000 / msPerOp, msPerOp, allocated / iterations));
+    }
+
+    private static CompactTree readTree(String xmlFile) throws Exception {
+        try (InputStream is = getXMLStream(xmlFile)) {
+            return PositionalXMLReader.readTree(is);
+        }
+    }
+
+    private static PyColumnFinder readColumnFinder(String xmlFile) {
+        return new PyColumnFinder(readPyFile(getPyFile(xmlFile)));
+    }
+
+    private static CompactTree transformTree(String xmlFile) throws Exception {
+        CompactTree tree = readTree(xmlFile);
+        new TransformPyAST().transformTree(tree, readColumnFinder(xmlFile));
+        return tree;
+    }
+
+    /**
+     * writer ignoring its output
+     */
+    private static class NullWriter extends Writer {
+        public void write(char[] cbuf, int off, int len) { }
+        public void write(int c) { }
+        public void write(String str, int off, int len) { }
+        public void flush() { }
+        public void close() { }
+    }
+}
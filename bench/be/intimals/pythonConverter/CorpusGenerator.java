@@ -0,0 +1,359 @@
+package be.intimals.pythonConverter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Generate pairs of Python files and XML files in the format of pyRegurgitator, to test the converter at scale.
+ * The XML file is the Python code with its AST nodes as tags, so the two files have the same lines.
+ * The generated code contains:
+ * - assignments and augmented assignments whose expressions repeat the same identifier
+ *   and identifiers included in other ones (a, ab, a_b), with a given number of operators
+ * - chained comparisons, whose Compare nodes have repeated value and cmpop children
+ * - nested classes, functions, if, for and while statements, whose bodies get Block and statements nodes
+ * The files are written while they are generated, they can be larger than the memory.
+ *
+ * java be.intimals.pythonConverter.CorpusGenerator [-files N] [-size BYTES[K|M]] [-lines N] [-depth N]
+ *      [-block N] [-repeat N] [-operators N] [-seed N] OUTPUT_DIR
+ */
+public class CorpusGenerator {
+    private static final String[] IDENTIFIERS = {"a", "ab", "a_b", "abc", "b", "ba", "x", "x1", "total", "total_1", "i", "j"};
+    // binary operators by level of precedence, an expression uses one level so that its left nested
+    // operations are the ones Python reads from the code (** is right associative, it is not used)
+    private static final String[][][] OPERATORS = {{{"Add", "+"}, {"Sub", "-"}},
+            {{"Mult", "*"}, {"Div", "/"}, {"FloorDiv", "//"}, {"Mod", "%"}}};
+    private static final String[][] AUG_OPERATORS = {{"Add", "+="}, {"Sub", "-="}, {"Mult", "*="}, {"Div", "/="}};
+    private static final String[] CMP_OPERATORS = {"<", ">", "==", "!=", "<=", ">="};
+
+    // number of files
+    private int nbFiles = 1;
+    // size of a python file in bytes, or number of lines if it is given
+    private long size = 1024;
+    private long nbLines = -1;
+    // maximal nesting depth of compound statements
+    private int depth = 3;
+    // number of statements in a body
+    private int blockSize = 5;
+    // occurrences of the same identifier in an expression
+    private int repeat = 3;
+    // operators in an expression
+    private int operators = 4;
+    private long seed = 1;
+
+    private Random random;
+    private Writer xml;
+    private Writer py;
+    private long pySize;
+    private long pyLines;
+    private int nbNames;
+
+    public static void main(String[] args) throws IOException {
+        CorpusGenerator generator = new CorpusGenerator();
+        String outputDir = null;
+        for (int i = 0; i < args.length; ++i) {
+            String option = args[i];
+            if (!option.startsWith("-")) {
+                outputDir = option;
+            } else if (i + 1 < args.length) {
+                String value = args[++i];
+                switch (option) {
+                    case "-files": generator.nbFiles = Integer.valueOf(value); break;
+                    case "-size": generator.size = parseSize(value); break;
+                    case "-lines": generator.nbLines = Long.valueOf(value); break;
+                    case "-depth": generator.depth = Integer.valueOf(value); break;
+                    case "-block": generator.blockSize = Math.max(1, Integer.valueOf(value)); break;
+                    case "-repeat": generator.repeat = Integer.valueOf(value); break;
+                    case "-operators": generator.operators = Integer.valueOf(value); break;
+                    case "-seed": generator.seed = Long.valueOf(value); break;
+                    default: outputDir = null; i = args.length;
+                }
+            }
+        }
+        if (outputDir == null) {
+            System.out.println("Usage:");
+            System.out.println("java be.intimals.pythonConverter.CorpusGenerator [-files N] [-size BYTES[K|M]] [-lines N] [-depth N]");
+            System.out.println("     [-block N] [-repeat N] [-operators N] [-seed N] OUTPUT_DIR");
+            System.exit(-1);
+        }
+        generator.generate(outputDir);
+    }
+
+    private static long parseSize(String value) {
+        String v = value.toUpperCase();
+        if (v.endsWith("K"))
+            return Long.valueOf(v.substring(0, v.length() - 1)) * 1024;
+        if (v.endsWith("M"))
+            return Long.valueOf(v.substring(0, v.length() - 1)) * 1024 * 1024;
+        return Long.valueOf(v);
+    }
+
+    /**
+     * write the files to a directory
+     * @param outputDir : output directory
+     */
+    public void generate(String outputDir) throws IOException {
+        new File(outputDir).mkdirs();
+        for (int i = 1; i <= nbFiles; ++i) {
+            String name = outputDir + "/" + String.format("synthetic_%05d", i);
+            random = new Random(seed * 1000003 + i);
+            try (Writer xmlWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(name + ".xml"), StandardCharsets.UTF_8));
+                 Writer pyWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(name + ".py"), StandardCharsets.UTF_8))) {
+                xml = xmlWriter;
+                py = pyWriter;
+                writeModule();
+            }
+            System.out.println("Generated files: " + name + ".py, " + pyLines + " lines, "
+                    + new File(name + ".py").length() + " bytes, " + name + ".xml, "
+                    + new File(name + ".xml").length() + " bytes");
+        }
+    }
+
+    private boolean isComplete() {
+        return nbLines >= 0 ? pyLines >= nbLines : pySize >= size;
+    }
+
+    private void writeModule() throws IOException {
+        pySize = 0;
+        pyLines = 0;
+        nbNames = 0;
+        xml.write("<Module>");
+        while (!isComplete()) {
+            writeStatement(0);
+            text("\n");
+        }
+        xml.write("</Module>\n");
+    }
+
+    /**
+     * write a statement at an indentation level, without the new line before it
+     */
+    private void writeStatement(int level) throws IOException {
+        if (level < depth && random.nextInt(3) == 0) {
+            switch (random.nextInt(level == 0 ? 5 : 4)) {
+                case 0: writeIf(level); break;
+                case 1: writeFor(level); break;
+                case 2: writeWhile(level); break;
+                case 3: writeFunctionDef(level); break;
+                default: writeClassDef(level);
+            }
+            return;
+        }
+        switch (random.nextInt(4)) {
+            case 0:
+                open("AugAssign");
+                open("target"); writeName(pickIdentifier(), "Store"); close("target");
+                String[] op = AUG_OPERATORS[random.nextInt(AUG_OPERATORS.length)];
+                open("op"); open(op[0]); text(" " + op[1] + " "); close(op[0]); close("op");
+                open("value"); writeExpression(pickIdentifier()); close("value");
+                close("AugAssign");
+                break;
+            case 1:
+                open("Expr");
+                writeCall("print");
+                close("Expr");
+                break;
+            default:
+                String identifier = pickIdentifier();
+                open("Assign");
+                open("targets"); writeName(identifier, "Store"); text(" = "); close("targets");
+                writeExpression(identifier);
+                close("Assign");
+        }
+    }
+
+    private void writeIf(int level) throws IOException {
+        open("If");
+        text("if ");
+        open("test"); writeCompare(); close("test");
+        text(":");
+        writeBody(level, "body");
+        if (random.nextBoolean()) {
+            text("\n" + indent(level));
+            open("orelse");
+            text("else:");
+            writeStatements(level + 1);
+            close("orelse");
+        }
+        close("If");
+    }
+
+    private void writeFor(int level) throws IOException {
+        open("For");
+        text("for ");
+        open("target"); writeName(pickIdentifier(), "Store"); close("target");
+        text(" in ");
+        open("iter"); writeCall("range"); close("iter");
+        text(":");
+        writeBody(level, "body");
+        close("For");
+    }
+
+    private void writeWhile(int level) throws IOException {
+        open("While");
+        text("while ");
+        open("test"); writeCompare(); close("test");
+        text(":");
+        writeBody(level, "body");
+        close("While");
+    }
+
+    private void writeFunctionDef(int level) throws IOException {
+        String name = "function" + (++nbNames);
+        open("FunctionDef", "name", name);
+        text("def " + name);
+        open("arguments");
+        text("(");
+        int nbArgs = 1 + random.nextInt(3);
+        for (int i = 0; i < nbArgs; ++i) {
+            if (i > 0)
+                text(", ");
+            String arg = IDENTIFIERS[i];
+            open("arg", "name", arg); text(arg); close("arg");
+        }
+        text("):");
+        close("arguments");
+        writeBody(level, "body");
+        close("FunctionDef");
+    }
+
+    private void writeClassDef(int level) throws IOException {
+        String name = "Class" + (++nbNames);
+        open("ClassDef", "name", name);
+        text("class " + name + ":");
+        writeBody(level, "body");
+        close("ClassDef");
+    }
+
+    /**
+     * write the body of a compound statement, its statements are one level deeper
+     */
+    private void writeBody(int level, String tag) throws IOException {
+        open(tag);
+        writeStatements(level + 1);
+        close(tag);
+    }
+
+    private void writeStatements(int level) throws IOException {
+        for (int i = 0; i < blockSize; ++i) {
+            text("\n" + indent(level));
+            writeStatement(level);
+        }
+    }
+
+    /**
+     * write an expression with the given number of operators,
+     * the identifier is used at most repeat times and the other operands are other identifiers or numbers
+     */
+    private void writeExpression(String identifier) throws IOException {
+        int nbOperands = operators + 1;
+        List<String> operands = new ArrayList<>();
+        for (int i = 0; i < nbOperands; ++i) {
+            if (i < repeat)
+                operands.add(identifier);
+            else if (random.nextInt(3) == 0)
+                operands.add(String.valueOf(random.nextInt(100)));
+            else
+                operands.add(pickIdentifier());
+        }
+        Collections.shuffle(operands, random);
+        String[][] level = OPERATORS[random.nextInt(OPERATORS.length)];
+        // left nested binary operations of the same precedence: ((a + b) - c) + d
+        for (int i = 1; i < nbOperands; ++i)
+            open("BinOp");
+        writeOperand(operands.get(0));
+        for (int i = 1; i < nbOperands; ++i) {
+            String[] op = level[random.nextInt(level.length)];
+            open(op[0]);
+            text(random.nextBoolean() ? " " + op[1] + " " : op[1]);
+            close(op[0]);
+            writeOperand(operands.get(i));
+            close("BinOp");
+        }
+    }
+
+    private void writeOperand(String operand) throws IOException {
+        if (Character.isDigit(operand.charAt(0))) {
+            open("Num"); text(operand); close("Num");
+        } else {
+            writeName(operand, "Load");
+        }
+    }
+
+    /**
+     * write a chained comparison a < b < c, with repeat comparisons
+     */
+    private void writeCompare() throws IOException {
+        open("Compare");
+        open("value"); writeName(pickIdentifier(), "Load"); close("value");
+        for (int i = 0; i < Math.max(1, repeat); ++i) {
+            open("cmpop"); text(" " + CMP_OPERATORS[random.nextInt(CMP_OPERATORS.length)] + " "); close("cmpop");
+            open("value"); writeName(pickIdentifier(), "Load"); close("value");
+        }
+        close("Compare");
+    }
+
+    private void writeCall(String function) throws IOException {
+        open("Call");
+        open("func"); writeName(function, "Load"); close("func");
+        text("(");
+        open("args");
+        int nbArgs = 1 + random.nextInt(Math.max(1, repeat));
+        for (int i = 0; i < nbArgs; ++i) {
+            if (i > 0)
+                text(", ");
+            writeOperand(random.nextBoolean() ? String.valueOf(random.nextInt(100)) : pickIdentifier());
+        }
+        close("args");
+        text(")");
+        close("Call");
+    }
+
+    private void writeName(String identifier, String ctx) throws IOException {
+        xml.write("<Name ctx=\"" + ctx + "\" name=\"" + identifier + "\">");
+        text(identifier);
+        close("Name");
+    }
+
+    private String pickIdentifier() {
+        return IDENTIFIERS[random.nextInt(IDENTIFIERS.length)];
+    }
+
+    private String indent(int level) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < level * 4; ++i)
+            sb.append(' ');
+        return sb.toString();
+    }
+
+    private void open(String tag) throws IOException {
+        xml.write("<" + tag + ">");
+    }
+
+    private void open(String tag, String attribute, String value) throws IOException {
+        xml.write("<" + tag + " " + attribute + "=\"" + value + "\">");
+    }
+
+    private void close(String tag) throws IOException {
+        xml.write("</" + tag + ">");
+    }
+
+    /**
+     * write python code to both files
+     */
+    private void text(String code) throws IOException {
+        py.write(code);
+        for (int i = 0; i < code.length(); ++i) {
+            char c = code.charAt(i);
+            switch (c) {
+                case '<': xml.write("&lt;"); break;
+                case '>': xml.write("&gt;"); break;
+                case '&': xml.write("&amp;"); break;
+                default: xml.write(c);
+            }
+            if (c == '\n')
+                ++pyLines;
+        }
+        pySize += code.length();
+    }
+}
@@ -0,0 +1,259 @@
+package be.intimals.pythonConverter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Check that the conversion paths write the outputs of the reference converter, which built a DOM of each XML.
+ * The input directory is converted with each path (tree, stream, threads, Python parser, gzip, binary trees,
+ * bundle, incremental) to a temporary directory, and each output XML and Python file must be the file of the
+ * expected directory. The directory of the FullName attribute is ignored, it depends on where the inputs are.
+ * The checks which failed are printed with their first differing file.
+ *
+ * java be.intimals.pythonConverter.ParityCheck [INPUT_DIR EXPECTED_DIR]
+ */
+public class ParityCheck {
+    private static final Pattern FULL_NAME = Pattern.compile("FullName=\"[^\"]*[/\\\\]");
+
+    private String inputDir;
+    // output file name -> content without the directory of FullName
+    private Map<String, String> expected;
+    private Path tmpDir;
+    private int nbRuns = 0;
+    private int nbPassed = 0;
+    private int nbFailed = 0;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 0 && args.length != 2) {
+            System.out.println("Usage:");
+            System.out.println("java be.intimals.pythonConverter.ParityCheck [INPUT_DIR EXPECTED_DIR]");
+            System.exit(-1);
+        }
+        ParityCheck check = new ParityCheck();
+        check.inputDir = args.length == 0 ? "sample_input" : args[0];
+        check.expected = readOutputs(Paths.get(args.length == 0 ? "sample_output" : args[1]));
+        check.run();
+        System.out.println("passed " + check.nbPassed + ", failed " + check.nbFailed);
+        if (check.nbFailed > 0)
+            System.exit(1);
+    }
+
+    private void run() throws IOException {
+        tmpDir = Files.createTempDirectory("pyConverterCheck");
+        try {
+            check("tree", readOutputs(convert(new TransformPyAST(), inputDir)));
+
+            TransformPyAST streaming = new TransformPyAST();
+            streaming.setStreaming(true);
+            check("stream", readOutputs(convert(streaming, inputDir)));
+
+            TransformPyAST parallel = new TransformPyAST();
+            parallel.setNbThreads(4);
+            check("threads", readOutputs(convert(parallel, inputDir)));
+
+            TransformPyAST python = new TransformPyAST();
+            python.setPythonSources(true);
+            check("python", readOutputs(convert(python, inputDir)));
+
+            checkGzip();
+            checkBinary();
+            checkBundle();
+            checkIncremental();
+        } finally {
+            try (Stream<Path> paths = Files.walk(tmpDir)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /**
+     * the inputs compressed with gzip, NAME.xml.gz and NAME.py.gz, are converted to compressed outputs
+     */
+    private void checkGzip() throws IOException {
+        Path gzipInput = Files.createDirectory(tmpDir.resolve("gzipInput"));
+        for (String name : expected.keySet()) {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipInput.resolve(name + ".gz")))) {
+                Files.copy(Paths.get(inputDir, name), out);
+            }
+        }
+        TransformPyAST converter = new TransformPyAST();
+        converter.setGzip(6, true);
+        check("gzip", readOutputs(convert(converter, gzipInput.toString())));
+    }
+
+    /**
+     * the binary tree NAME.tree read by BinaryTreeReader gives NAME.xml
+     */
+    private void checkBinary() throws IOException {
+        TransformPyAST converter = new TransformPyAST();
+        converter.setBinary(true);
+        Path outputDir = convert(converter, inputDir);
+        Map<String, String> outputs = readOutputs(outputDir);
+        int nbTrees = 0;
+        try (DirectoryStream<Path> trees = Files.newDirectoryStream(outputDir, "*.tree")) {
+            for (Path tree : trees) {
+                String treeName = tree.getFileName().toString();
+                StringWriter xml = new StringWriter();
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(tree))) {
+                    new BinaryTreeReader(in).read(new XmlFormatter(xml));
+                }
+                outputs.put(treeName.substring(0, treeName.length() - 4) + "xml", normalize(xml.toString()));
+                ++nbTrees;
+            }
+        }
+        // each XML is replaced by the XML of its tree
+        check("binary", outputs);
+        if (nbTrees != countXml(expected))
+            fail("binary", nbTrees + " trees");
+    }
+
+    /**
+     * the files read from the bundle by BundleReader are the output files
+     */
+    private void checkBundle() throws IOException {
+        TransformPyAST converter = new TransformPyAST();
+        converter.setBundled(true);
+        BundleReader reader = new BundleReader(convert(converter, inputDir).toString());
+        Map<String, String> outputs = new TreeMap<>();
+        for (String name : reader.getFileNames())
+            outputs.put(name, normalize(new String(reader.read(name), StandardCharsets.UTF_8)));
+        check("bundle", outputs);
+    }
+
+    /**
+     * a second run skips all the files, a run with other output options converts them again
+     * and removes the outputs written with the previous options
+     */
+    private void checkIncremental() throws IOException {
+        Path outputDir = Files.createDirectory(tmpDir.resolve("incremental"));
+        int nbFiles = countXml(expected);
+        convert(newIncremental(false, false), inputDir, outputDir);
+        convert(newIncremental(false, false), inputDir, outputDir);
+        if (countJournal(outputDir, ConversionJournal.SKIPPED) != nbFiles)
+            fail("incremental", "unchanged files are transformed again");
+        convert(newIncremental(true, false), inputDir, outputDir);
+        if (countJournal(outputDir, ConversionJournal.DONE) != nbFiles || countFiles(outputDir, ".tree") != nbFiles)
+            fail("incremental", "files are not transformed again with -binary");
+        convert(newIncremental(false, true), inputDir, outputDir);
+        if (countJournal(outputDir, ConversionJournal.DONE) != nbFiles || countFiles(outputDir, ".tree") != 0
+                || countFiles(outputDir, ".xml") != 0)
+            fail("incremental", "outputs of the previous options are left with -gzip");
+        check("incremental", readOutputs(outputDir));
+    }
+
+    private TransformPyAST newIncremental(boolean binary, boolean gzip) {
+        TransformPyAST converter = new TransformPyAST();
+        converter.setIncremental(true);
+        converter.setJournaled(true);
+        converter.setBinary(binary);
+        if (gzip)
+            converter.setGzip(6, false);
+        return converter;
+    }
+
+    private Path convert(TransformPyAST converter, String dir) throws IOException {
+        return convert(converter, dir, Files.createDirectory(tmpDir.resolve("output" + ++nbRuns)));
+    }
+
+    /**
+     * run a conversion, its log is only printed if a file cannot be converted
+     */
+    private Path convert(TransformPyAST converter, String dir, Path outputDir) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        int nbFailedFiles;
+        try {
+            System.setOut(new PrintStream(log, true));
+            nbFailedFiles = converter.transformPyAST(dir, outputDir.toString());
+        } finally {
+            System.setOut(out);
+        }
+        if (nbFailedFiles > 0 || converter.getRunFailure() != null)
+            System.out.print(log.toString());
+        return outputDir;
+    }
+
+    /**
+     * compare the outputs of a check with the expected files
+     */
+    private void check(String name, Map<String, String> outputs) {
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            String output = outputs.get(entry.getKey());
+            if (!entry.getValue().equals(output)) {
+                fail(name, output == null ? "no " + entry.getKey() : entry.getKey() + " differs");
+                return;
+            }
+        }
+        for (String file : outputs.keySet()) {
+            if (!expected.containsKey(file)) {
+                fail(name, "unexpected " + file);
+                return;
+            }
+        }
+        ++nbPassed;
+    }
+
+    private void fail(String name, String reason) {
+        System.out.println(name + ": " + reason);
+        ++nbFailed;
+    }
+
+    /**
+     * @param dir : output directory
+     * @return : XML and Python files of the directory without their gzip suffix -> content
+     */
+    private static Map<String, String> readOutputs(Path dir) throws IOException {
+        Map<String, String> outputs = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.{xml,py,xml.gz,py.gz}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                byte[] content = Files.readAllBytes(file);
+                if (name.endsWith(Utils.GZIP_SUFFIX)) {
+                    name = Utils.stripGzipSuffix(name);
+                    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+                        content = in.readAllBytes();
+                    }
+                }
+                outputs.put(name, normalize(new String(content, StandardCharsets.UTF_8)));
+            }
+        }
+        return outputs;
+    }
+
+    private static String normalize(String output) {
+        return FULL_NAME.matcher(output).replaceFirst("FullName=\"");
+    }
+
+    private static int countXml(Map<String, String> files) {
+        int nbXml = 0;
+        for (String name : files.keySet()) {
+            if (name.endsWith(".xml"))
+                ++nbXml;
+        }
+        return nbXml;
+    }
+
+    private static int countFiles(Path dir, String extension) throws IOException {
+        int nbFiles = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + extension)) {
+            for (Path ignored : files)
+                ++nbFiles;
+        }
+        return nbFiles;
+    }
+
+    private static int countJournal(Path dir, String outcome) throws IOException {
+        int nbFiles = 0;
+        for (String line : Files.readAllLines(dir.resolve(ConversionJournal.FILE_NAME), StandardCharsets.UTF_8)) {
+            if (line.startsWith(outcome + "\t"))
+                ++nbFiles;
+        }
+        return nbFiles;
+    }
+}
@@ -0,0 +1,92 @@
+package be.intimals.pythonConverter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Compare the trees of PySourceParser with the AST of CPython, listed by bench/ast_nodes.py.
+ * For each file, the AST nodes of the tree in document order (without the operators, with :CONTEXT for the
+ * nodes which have a ctx attribute) must be the nodes of the listing. The first differences are printed,
+ * then the numbers of files which are the same, differ or cannot be parsed.
+ *
+ * python3 bench/ast_nodes.py INPUT_DIR > nodes.txt
+ * java be.intimals.pythonConverter.ParserCheck nodes.txt
+ */
+public class ParserCheck {
+    // elements which are not nodes of CPython, or only operators
+    private static final Set<String> IGNORED = new HashSet<>(Arrays.asList("SourceFile", "Module", "Index",
+            "Add", "Sub", "Mult", "MatMult", "Div", "Mod", "Pow", "LShift", "RShift", "BitOr", "BitXor", "BitAnd",
+            "FloorDiv"));
+    private static final int MAX_PRINTED = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage:");
+            System.out.println("java be.intimals.pythonConverter.ParserCheck NODES_FILE");
+            System.exit(-1);
+        }
+        int nbSame = 0;
+        int nbDifferent = 0;
+        int nbFailed = 0;
+        for (String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t", -1);
+            String pyFile = fields[0];
+            List<String> expected = fields[1].isEmpty() ? Collections.emptyList() : Arrays.asList(fields[1].split(" "));
+            List<String> nodes = new ArrayList<>();
+            try {
+                String source = new String(Files.readAllBytes(Paths.get(pyFile)), StandardCharsets.UTF_8);
+                CompactTree tree = PySourceParser.parse(source, pyFile);
+                addNodes(tree, tree.getRoot(), nodes);
+            } catch (RuntimeException e) {
+                System.out.println(pyFile + ": " + e.getMessage());
+                ++nbFailed;
+                continue;
+            }
+            if (nodes.equals(expected)) {
+                ++nbSame;
+            } else if (++nbDifferent <= MAX_PRINTED) {
+                int i = 0;
+                while (i < nodes.size() && i < expected.size() && nodes.get(i).equals(expected.get(i)))
+                    ++i;
+                System.out.println(pyFile + ": node " + i + " is " + around(nodes, i) + " instead of " + around(expected, i));
+            }
+        }
+        System.out.println("same " + nbSame + ", different " + nbDifferent + ", failed " + nbFailed);
+        if (nbDifferent + nbFailed > 0)
+            System.exit(1);
+    }
+
+    /**
+     * add the AST nodes of the siblings from node and of their descendants, in document order
+     */
+    private static void addNodes(CompactTree tree, int node, List<String> nodes) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            int current = stack.pop();
+            int next = tree.getNextSibling(current);
+            if (next != CompactTree.NONE)
+                stack.push(next);
+            if (!tree.isElement(current))
+                continue;
+            String name = tree.getName(current);
+            // ExtSlice is a Tuple in CPython 3.9, and the values of an f-string are only its text
+            if (name.equals("ExtSlice"))
+                name = "Tuple";
+            if (NodeRules.isAstLabel(name) && !IGNORED.contains(name)) {
+                String context = tree.getAttribute(current, "ctx");
+                nodes.add(context.isEmpty() ? name : name + ":" + context);
+            }
+            int child = tree.getFirstChild(current);
+            if (!name.equals("JoinedStr") && child != CompactTree.NONE)
+                stack.push(child);
+        }
+    }
+
+    private static String around(List<String> nodes, int i) {
+        return String.join(" ", nodes.subList(Math.max(0, i - 3), Math.min(nodes.size(), i + 3)));
+    }
+}
@@ -6,6 +6,9 @@
 
 import be.intimals.pythonConverter.*;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 public class Main {
 
     public static void main(String[] args) {
@@ -15,21 +18,60 @@ public class Main {
 //        args[0] = "sample_input";
 //        args[1] = "sample_output";
 
-        if (args.length != 2) {
-            System.out.println("Usage:");
-            System.out.println("java -jar pyConverter.jar SOURCE_DIR RESULT_DIR");
-            System.out.println("SOURCE_DIR is a directory containing source files");
-            System.out.println("RESULT_DIR is a directory containing results");
-            System.exit(-1);
-        } else{
-            //input source files
-            String inputDir = args[0];
-            //output results files
-            String outputDir = args[1];
-            //do transformation
-            TransformPyAST pyAST = new TransformPyAST();
-            pyAST.transformPyAST(inputDir, outputDir);
+        if (args.length == 2 && args[0].equals("-server")) {
+            //keep one JVM converting the jobs of the clients
+            try {
+                new ConversionServer(Integer.valueOf(args[1])).run();
+            } catch (IOException e) {
+                System.out.println("Server error " + e);
+                System.exit(-1);
+            }
+            return;
+        }
+        if (args.length > 2 && args[0].equals("-client")) {
+            //send the job to a server
+            try {
+                System.exit(ConversionClient.send(Integer.valueOf(args[1]), Arrays.copyOfRange(args, 2, args.length)));
+            } catch (IOException e) {
+                System.out.println("Cannot reach the server " + e);
+                System.exit(-1);
+            }
+        }
+
+        ConversionJob job = null;
+        try {
+            job = ConversionJob.parse(args);
+        } catch (IllegalArgumentException e) {
+            if (e.getMessage() != null)
+                System.out.println(e.getMessage());
+            printUsage();
         }
+        //do transformation
+        if (job.run() != null)
+            System.exit(1);
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage:");
+        System.out.println("java -jar pyConverter.jar [-threads N] [-stream] [-incremental] [-watch [-delay MS]] [-report FILE] [-bundle] [-binary] [-journal | -resume] [-python] [-gzip LEVEL [-gzipPy]] SOURCE_DIR RESULT_DIR");
+        System.out.println("java -jar pyConverter.jar -server PORT");
+        System.out.println("java -jar pyConverter.jar -client PORT [options] SOURCE_DIR RESULT_DIR");
+        System.out.println("SOURCE_DIR is a directory containing source files");
+        System.out.println("RESULT_DIR is a directory containing results");
+        System.out.println("-threads N transforms N files in parallel (default 1)");
+        System.out.println("-stream transforms the XML files as streams, keeping the summary of their elements in temporary files");
+        System.out.println("-incremental only transforms the files which changed since the last run");
+        System.out.println("-watch keeps transforming the new and modified files of SOURCE_DIR");
+        System.out.println("-delay MS waits MS milliseconds without changes before transforming a file (default 2000)");
+        System.out.println("-bundle writes the outputs to a few bundle files with an index");
+        System.out.println("-binary also writes each tree to a compact binary file NAME.tree");
+        System.out.println("-journal writes the outcome of each file to RESULT_DIR/pyConverter.journal");
+        System.out.println("-resume continues the journal and skips the files converted by the previous runs");
+        System.out.println("-python parses the Python files of SOURCE_DIR in the JVM, without the XML files of pyRegurgitator");
+        System.out.println("-gzip LEVEL writes NAME.xml.gz compressed with the deflater level 0 to 9, -gzipPy also NAME.py.gz");
+        System.out.println("-report FILE writes the time, allocated bytes and counters of each file to a JSON file");
+        System.out.println("-server PORT keeps converting the jobs sent to PORT, -client PORT sends a job to the server");
+        System.exit(-1);
     }
 
 }
@@ -0,0 +1,115 @@
+package be.intimals.pythonConverter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static be.intimals.pythonConverter.BinaryTreeWriter.*;
+
+/**
+ * Read a tree written by BinaryTreeWriter and give its events to a handler,
+ * e.g. an XmlFormatter writes the same XML as the converter.
+ */
+public class BinaryTreeReader {
+    private DataInputStream in;
+    private List<String> dictionary = new ArrayList<>();
+
+    /**
+     * @param in : input stream, not closed
+     */
+    public BinaryTreeReader(InputStream in){
+        this.in = new DataInputStream(new BufferedInputStream(in));
+    }
+
+    /**
+     * read a tree
+     * @param handler : handler of the events of the tree
+     * @throws IOException : if the input is not a tree of a known version
+     */
+    public void read(TreeHandler handler) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if(!Arrays.equals(magic, MAGIC))
+            throw new IOException("not a binary tree file");
+        int version = readVarint();
+        if(version != VERSION)
+            throw new IOException("unknown binary tree version " + version);
+        handler.startDocument();
+        readItems(handler);
+        handler.endDocument();
+    }
+
+    /**
+     * read the items of the document until its end, the depth of the open elements is counted without recursion
+     */
+    private void readItems(TreeHandler handler) throws IOException {
+        int depth = 0;
+        int item;
+        while((item = readVarint()) != END || depth > 0){
+            if(item == END){
+                handler.endElement();
+                --depth;
+            }else if(item == TEXT){
+                handler.characters(readString());
+            }else if(item == ELEMENT){
+                readStartElement(handler);
+                ++depth;
+            }else{
+                throw new IOException("unknown item " + item);
+            }
+        }
+    }
+
+    /**
+     * read the name and the attributes of an element, its children follow
+     */
+    private void readStartElement(TreeHandler handler) throws IOException {
+        handler.startElement(readLabel());
+        // the attributes are given in the order of their names, the positions as ints
+        Map<String, Object> attributes = new TreeMap<>();
+        int positionMask = in.readUnsignedByte();
+        for(int i = 0; i < POSITIONS.length; ++i){
+            if((positionMask & (1 << i)) != 0){
+                int value = readVarint();
+                attributes.put(POSITIONS[i], (value >>> 1) ^ -(value & 1));
+            }
+        }
+        int nbAttributes = readVarint();
+        for(int i = 0; i < nbAttributes; ++i){
+            String name = readLabel();
+            attributes.put(name, readString());
+        }
+        for(Map.Entry<String, Object> attribute : attributes.entrySet()){
+            if(attribute.getValue() instanceof Integer)
+                handler.position(attribute.getKey(), (Integer) attribute.getValue());
+            else
+                handler.attribute(attribute.getKey(), (String) attribute.getValue());
+        }
+    }
+
+    private String readLabel() throws IOException {
+        int k = readVarint();
+        if(k > 0)
+            return dictionary.get(k - 1);
+        String name = readString();
+        dictionary.add(name);
+        return name;
+    }
+
+    private String readString() throws IOException {
+        byte[] bytes = new byte[readVarint()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readVarint() throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7){
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("malformed varint");
+    }
+}
@@ -0,0 +1,195 @@
+package be.intimals.pythonConverter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Write a converted tree in a compact binary preorder encoding, read by BinaryTreeReader.
+ *
+ * file     := "PYTREE" version items
+ * items    := (ELEMENT element | TEXT string)* END
+ * element  := label positions attributes items
+ * label    := varint k: the k-th name of the dictionary if k > 0, if k = 0 a new name follows as a string
+ * positions:= a byte whose bits tell which of ID, LineNr, EndLineNr, ColNr, EndColNr are given,
+ *             then their values as zigzag varints
+ * attributes := varint n, then n times: label string
+ * string   := varint length, UTF-8 bytes
+ *
+ * The names of elements and attributes share the dictionary, which is built while writing.
+ * The texts are those written in the XML output: the lines of a text are joined and the texts left empty are not written.
+ */
+public class BinaryTreeWriter implements TreeHandler {
+    static final byte[] MAGIC = "PYTREE".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int END = 0;
+    static final int ELEMENT = 1;
+    static final int TEXT = 2;
+    static final String[] POSITIONS = {"ID", "LineNr", "EndLineNr", "ColNr", "EndColNr"};
+    private static final long NOT_AN_INTEGER = Long.MIN_VALUE;
+
+    private OutputStream out;
+    private Map<String, Integer> dictionary = new HashMap<>();
+    // start of the current element, written when its attributes are known
+    private String pendingName;
+    private int[] positions = new int[POSITIONS.length];
+    private int positionMask;
+    private List<String> attributes = new ArrayList<>();
+    // text which is not written yet
+    private StringBuilder text = new StringBuilder();
+
+    /**
+     * @param out : output stream, flushed but not closed
+     */
+    public BinaryTreeWriter(OutputStream out){
+        this.out = new BufferedOutputStream(out);
+    }
+
+    public void startDocument() throws IOException {
+        out.write(MAGIC);
+        writeVarint(VERSION);
+    }
+
+    public void startElement(String name) throws IOException {
+        writeStart();
+        writeText();
+        pendingName = name;
+        positionMask = 0;
+        attributes.clear();
+    }
+
+    public void attribute(String name, String value) throws IOException {
+        int position = getPosition(name);
+        if(position >= 0){
+            long parsed = parseInteger(value);
+            if(parsed != NOT_AN_INTEGER){
+                setPosition(position, (int) parsed);
+                return;
+            }
+        }
+        attributes.add(name);
+        attributes.add(value);
+    }
+
+    public void position(String name, int value) throws IOException {
+        int position = getPosition(name);
+        if(position >= 0){
+            setPosition(position, value);
+        }else{
+            attributes.add(name);
+            attributes.add(String.valueOf(value));
+        }
+    }
+
+    /**
+     * @return : index of a position in POSITIONS, -1 if the name is not a position
+     */
+    private static int getPosition(String name){
+        for(int i = 0; i < POSITIONS.length; ++i)
+            if(POSITIONS[i].equals(name))
+                return i;
+        return -1;
+    }
+
+    private void setPosition(int position, int value){
+        positions[position] = value;
+        positionMask |= 1 << position;
+    }
+
+    public void characters(String content) throws IOException {
+        writeStart();
+        text.append(content);
+    }
+
+    public void endElement() throws IOException {
+        writeStart();
+        writeText();
+        writeVarint(END);
+    }
+
+    public void endDocument() throws IOException {
+        writeText();
+        writeVarint(END);
+        out.flush();
+    }
+
+    /**
+     * write the start of the pending element
+     */
+    private void writeStart() throws IOException {
+        if(pendingName == null)
+            return;
+        writeVarint(ELEMENT);
+        writeLabel(pendingName);
+        out.write(positionMask);
+        for(int i = 0; i < POSITIONS.length; ++i)
+            if((positionMask & (1 << i)) != 0)
+                writeVarint((positions[i] << 1) ^ (positions[i] >> 31));
+        writeVarint(attributes.size() / 2);
+        for(int i = 0; i < attributes.size(); i += 2){
+            writeLabel(attributes.get(i));
+            writeString(attributes.get(i + 1));
+        }
+        pendingName = null;
+    }
+
+    /**
+     * write the pending text with its lines joined, as in the XML output
+     */
+    private void writeText() throws IOException {
+        if(text.length() == 0)
+            return;
+        String joined = XmlFormatter.joinLines(text);
+        text.setLength(0);
+        if(!joined.isEmpty()){
+            writeVarint(TEXT);
+            writeString(joined);
+        }
+    }
+
+    private void writeLabel(String name) throws IOException {
+        Integer k = dictionary.get(name);
+        if(k != null){
+            writeVarint(k);
+        }else{
+            dictionary.put(name, dictionary.size() + 1);
+            writeVarint(0);
+            writeString(name);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while((value & ~0x7F) != 0){
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * @return : the int written in the value without + or leading zeros, NOT_AN_INTEGER if it is not one
+     */
+    private static long parseInteger(String value){
+        int length = value.length();
+        int start = length > 1 && value.charAt(0) == '-' ? 1 : 0;
+        // no digits, leading zeros, -0, or more digits than an int
+        if(length == start || length - start > 10 || (value.charAt(start) == '0' && length > 1))
+            return NOT_AN_INTEGER;
+        long parsed = 0;
+        for(int i = start; i < length; ++i){
+            char c = value.charAt(i);
+            if(c < '0' || c > '9')
+                return NOT_AN_INTEGER;
+            parsed = parsed * 10 + (c - '0');
+        }
+        if(start > 0)
+            parsed = -parsed;
+        return parsed < Integer.MIN_VALUE || parsed > Integer.MAX_VALUE ? NOT_AN_INTEGER : parsed;
+    }
+}
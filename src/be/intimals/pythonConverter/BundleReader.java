@@ -0,0 +1,56 @@
+package be.intimals.pythonConverter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Read the output files of a bundled result directory, see OutputBundle.
+ * The index is read once, then each file is read from its offset in its bundle file.
+ */
+public class BundleReader {
+    private String dir;
+    // output file name -> bundle file, offset, length
+    private Map<String, String[]> index = new TreeMap<>();
+
+    /**
+     * read the index of a result directory
+     * @param dir : directory contains the bundle files
+     * @throws IOException
+     */
+    public BundleReader(String dir) throws IOException {
+        this.dir = dir;
+        for (String line : Files.readAllLines(Paths.get(dir, OutputBundle.INDEX_FILE), StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t");
+            if(fields.length == 4)
+                index.put(fields[0], Arrays.copyOfRange(fields, 1, 4));
+        }
+    }
+
+    /**
+     * @return : names of the output files, sorted
+     */
+    public Set<String> getFileNames(){
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * read an output file
+     * @param fileName : name of the output file, e.g. sample1.xml
+     * @return : content of the file
+     * @throws IOException
+     */
+    public byte[] read(String fileName) throws IOException {
+        String[] entry = index.get(fileName);
+        if(entry == null)
+            throw new FileNotFoundException(fileName + " is not in " + dir);
+        byte[] content = new byte[Integer.valueOf(entry[2])];
+        try (RandomAccessFile file = new RandomAccessFile(Paths.get(dir, entry[0]).toFile(), "r")) {
+            file.seek(Long.valueOf(entry[1]));
+            file.readFully(content);
+        }
+        return content;
+    }
+}
@@ -0,0 +1,554 @@
+package be.intimals.pythonConverter;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A mutable XML tree stored in arrays instead of DOM objects, a node is an index in the arrays.
+ *
+ * Each node has links to its parent, first and last child, previous and next sibling.
+ * An element has a label id, its line in the input XML, its text span (see TextSpans) and the
+ * positions ID, LineNr, EndLineNr, ColNr and EndColNr as ints, which are formatted only when the
+ * tree is written. Its other attributes are kept as strings. A text node has a text.
+ * The tree is written like a DOM: attributes sorted by name and text nodes as they are, even empty.
+ */
+public class CompactTree {
+    public static final int NONE = -1;
+
+    // positions, their names are those of the attributes
+    public static final int ID = 0;
+    public static final int LINE_NR = 1;
+    public static final int END_LINE_NR = 2;
+    public static final int COL_NR = 3;
+    public static final int END_COL_NR = 4;
+    static final String[] POSITION_NAMES = {Labels.ID, Labels.LINE_NR, Labels.END_LINE_NR,
+            Labels.COL_NR, Labels.END_COL_NR};
+    // positions in the order of their names
+    static final int[] SORTED_POSITIONS = {COL_NR, END_COL_NR, END_LINE_NR, ID, LINE_NR};
+    // label of the text nodes
+    private static final int TEXT = -1;
+
+    private int size = 0;
+    private int[] labels;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] lastChildren;
+    private int[] previousSiblings;
+    private int[] nextSiblings;
+    private int[] xmlLines;
+    private int[] spans;
+    private int[][] positions = new int[POSITION_NAMES.length][];
+    // bit i is set if position i is given
+    private byte[] positionMasks;
+    // texts of the text nodes
+    private String[] texts;
+    // other attributes of the elements: name, value, ... sorted by name, null if none
+    private String[][] attributes;
+
+    // names of the labels, and their ids
+    private List<String> names = new ArrayList<>();
+    private Map<String, Integer> nameIds = new HashMap<>();
+
+    private int root = NONE;
+    private TextSpans textSpans;
+
+    /**
+     * @param capacity : expected number of nodes
+     */
+    public CompactTree(int capacity){
+        capacity = Math.max(capacity, 16);
+        labels = new int[capacity];
+        parents = new int[capacity];
+        firstChildren = new int[capacity];
+        lastChildren = new int[capacity];
+        previousSiblings = new int[capacity];
+        nextSiblings = new int[capacity];
+        xmlLines = new int[capacity];
+        spans = new int[capacity];
+        for(int i = 0; i < positions.length; ++i)
+            positions[i] = new int[capacity];
+        positionMasks = new byte[capacity];
+        texts = new String[capacity];
+        attributes = new String[capacity][];
+    }
+
+    /**
+     * create an element which is not in the tree yet
+     * @param name : name of the element
+     * @param xmlLine : line of the element in the input XML, 0 if it is created by the transformation
+     * @param span : text span of the element, NONE if it is created by the transformation
+     * @return : new element
+     */
+    public int createElement(String name, int xmlLine, int span){
+        int node = newNode();
+        labels[node] = getLabel(name);
+        xmlLines[node] = xmlLine;
+        spans[node] = span;
+        return node;
+    }
+
+    /**
+     * create a text node which is not in the tree yet
+     * @param text : text
+     * @return : new text node
+     */
+    public int createText(String text){
+        int node = newNode();
+        labels[node] = TEXT;
+        texts[node] = text;
+        return node;
+    }
+
+    private int newNode(){
+        if(size == labels.length)
+            grow();
+        int node = size++;
+        parents[node] = NONE;
+        firstChildren[node] = NONE;
+        lastChildren[node] = NONE;
+        previousSiblings[node] = NONE;
+        nextSiblings[node] = NONE;
+        return node;
+    }
+
+    private void grow(){
+        int capacity = labels.length * 2;
+        labels = Arrays.copyOf(labels, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        lastChildren = Arrays.copyOf(lastChildren, capacity);
+        previousSiblings = Arrays.copyOf(previousSiblings, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        xmlLines = Arrays.copyOf(xmlLines, capacity);
+        spans = Arrays.copyOf(spans, capacity);
+        for(int i = 0; i < positions.length; ++i)
+            positions[i] = Arrays.copyOf(positions[i], capacity);
+        positionMasks = Arrays.copyOf(positionMasks, capacity);
+        texts = Arrays.copyOf(texts, capacity);
+        attributes = Arrays.copyOf(attributes, capacity);
+    }
+
+    private int getLabel(String name){
+        Integer label = nameIds.get(name);
+        if(label == null){
+            label = names.size();
+            names.add(name);
+            nameIds.put(name, label);
+        }
+        return label;
+    }
+
+    /**
+     * @return : number of nodes, including the ones removed from the tree
+     */
+    public int size(){
+        return size;
+    }
+
+    public int getRoot(){
+        return root;
+    }
+
+    public void setRoot(int node){
+        root = node;
+    }
+
+    public TextSpans getTextSpans(){
+        return textSpans;
+    }
+
+    public void setTextSpans(TextSpans textSpans){
+        this.textSpans = textSpans;
+    }
+
+    public boolean isElement(int node){
+        return labels[node] != TEXT;
+    }
+
+    public boolean isText(int node){
+        return labels[node] == TEXT;
+    }
+
+    /**
+     * @return : name of an element, it is in Labels if the name given to the tree is
+     */
+    public String getName(int node){
+        return names.get(labels[node]);
+    }
+
+    public void rename(int node, String name){
+        labels[node] = getLabel(name);
+    }
+
+    public int getParent(int node){
+        return parents[node];
+    }
+
+    public int getFirstChild(int node){
+        return firstChildren[node];
+    }
+
+    public int getLastChild(int node){
+        return lastChildren[node];
+    }
+
+    public int getNextSibling(int node){
+        return nextSiblings[node];
+    }
+
+    public int getPreviousSibling(int node){
+        return previousSiblings[node];
+    }
+
+    /**
+     * @return : number of children of a node
+     */
+    public int getNbChildren(int node){
+        int nbChildren = 0;
+        for(int child = firstChildren[node]; child != NONE; child = nextSiblings[child])
+            ++nbChildren;
+        return nbChildren;
+    }
+
+    public int getXmlLine(int node){
+        return xmlLines[node];
+    }
+
+    public int getSpan(int node){
+        return spans[node];
+    }
+
+    public String getText(int node){
+        return texts[node];
+    }
+
+    public void setText(int node, String text){
+        texts[node] = text;
+    }
+
+    /**
+     * @return : texts of the descendants of a node, like the text content of a DOM node
+     */
+    public String getTextContent(int node){
+        if(isText(node))
+            return texts[node];
+        StringBuilder sb = new StringBuilder();
+        for(int n = firstChildren[node]; n != NONE; n = nextInPreorder(n, node))
+            if(isText(n))
+                sb.append(texts[n]);
+        return sb.toString();
+    }
+
+    /**
+     * @param node : current node
+     * @param top : node whose descendants are visited
+     * @return : next node in document order, NONE after the last descendant of top
+     */
+    private int nextInPreorder(int node, int top){
+        if(firstChildren[node] != NONE)
+            return firstChildren[node];
+        while(node != top && node != NONE){
+            if(nextSiblings[node] != NONE)
+                return nextSiblings[node];
+            node = parents[node];
+        }
+        return NONE;
+    }
+
+    /**
+     * add a node as the last child of a parent, the node is removed from its current parent
+     */
+    public void appendChild(int parent, int node){
+        remove(node);
+        parents[node] = parent;
+        previousSiblings[node] = lastChildren[parent];
+        if(lastChildren[parent] == NONE)
+            firstChildren[parent] = node;
+        else
+            nextSiblings[lastChildren[parent]] = node;
+        lastChildren[parent] = node;
+    }
+
+    /**
+     * move consecutive siblings to the end of the children of a parent in one step: the run is unlinked from
+     * its parent and linked after the last child of the new parent, only the parent of each node is updated
+     * @param first : first node of the run
+     * @param last : last node of the run, first or one of its next siblings
+     * @param parent : new parent, which is not in the run
+     */
+    public void moveChildren(int first, int last, int parent){
+        int oldParent = parents[first];
+        int previous = previousSiblings[first];
+        int next = nextSiblings[last];
+        if(oldParent != NONE){
+            if(previous == NONE)
+                firstChildren[oldParent] = next;
+            else
+                nextSiblings[previous] = next;
+            if(next == NONE)
+                lastChildren[oldParent] = previous;
+            else
+                previousSiblings[next] = previous;
+        }
+        previousSiblings[first] = lastChildren[parent];
+        if(lastChildren[parent] == NONE)
+            firstChildren[parent] = first;
+        else
+            nextSiblings[lastChildren[parent]] = first;
+        lastChildren[parent] = last;
+        nextSiblings[last] = NONE;
+        for(int node = first; node != NONE; node = nextSiblings[node])
+            parents[node] = parent;
+    }
+
+    /**
+     * add a node as the first child of a parent, the node is removed from its current parent
+     */
+    public void insertFirst(int parent, int node){
+        remove(node);
+        parents[node] = parent;
+        nextSiblings[node] = firstChildren[parent];
+        if(firstChildren[parent] == NONE)
+            lastChildren[parent] = node;
+        else
+            previousSiblings[firstChildren[parent]] = node;
+        firstChildren[parent] = node;
+    }
+
+    /**
+     * remove a node from its parent, the node keeps its children
+     */
+    public void remove(int node){
+        int parent = parents[node];
+        if(parent == NONE)
+            return;
+        if(previousSiblings[node] == NONE)
+            firstChildren[parent] = nextSiblings[node];
+        else
+            nextSiblings[previousSiblings[node]] = nextSiblings[node];
+        if(nextSiblings[node] == NONE)
+            lastChildren[parent] = previousSiblings[node];
+        else
+            previousSiblings[nextSiblings[node]] = previousSiblings[node];
+        parents[node] = NONE;
+        previousSiblings[node] = NONE;
+        nextSiblings[node] = NONE;
+    }
+
+    /**
+     * remove all children of a node
+     */
+    public void removeChildren(int node){
+        while(firstChildren[node] != NONE)
+            remove(firstChildren[node]);
+    }
+
+    /**
+     * @param node : element
+     * @param position : ID, LINE_NR, END_LINE_NR, COL_NR or END_COL_NR
+     * @return : value of the position
+     */
+    public int getPosition(int node, int position){
+        if((positionMasks[node] & (1 << position)) != 0)
+            return positions[position][node];
+        String value = getOtherAttribute(node, POSITION_NAMES[position]);
+        if(value == null)
+            throw new IllegalStateException(POSITION_NAMES[position] + " of " + getName(node) + " is not set");
+        return Integer.valueOf(value);
+    }
+
+    public void setPosition(int node, int position, int value){
+        removeOtherAttribute(node, POSITION_NAMES[position]);
+        positions[position][node] = value;
+        positionMasks[node] |= 1 << position;
+    }
+
+    /**
+     * copy the positions LineNr, EndLineNr, ColNr and EndColNr of an element to another element,
+     * a position which is not set is copied as an empty attribute like with a DOM
+     */
+    public void copyPositions(int from, int to){
+        for(int position = LINE_NR; position <= END_COL_NR; ++position){
+            if((positionMasks[from] & (1 << position)) != 0)
+                setPosition(to, position, positions[position][from]);
+            else
+                setAttribute(to, POSITION_NAMES[position], getAttribute(from, POSITION_NAMES[position]));
+        }
+    }
+
+    /**
+     * @return : value of an attribute, an empty string if it does not exist
+     */
+    public String getAttribute(int node, String name){
+        for(int position = 0; position < POSITION_NAMES.length; ++position)
+            if((positionMasks[node] & (1 << position)) != 0 && POSITION_NAMES[position].equals(name))
+                return String.valueOf(positions[position][node]);
+        String value = getOtherAttribute(node, name);
+        return value == null ? "" : value;
+    }
+
+    public void setAttribute(int node, String name, String value){
+        for(int position = 0; position < POSITION_NAMES.length; ++position)
+            if(POSITION_NAMES[position].equals(name))
+                positionMasks[node] &= ~(1 << position);
+        String[] nodeAttributes = attributes[node];
+        if(nodeAttributes == null){
+            attributes[node] = new String[]{name, value};
+            return;
+        }
+        int i = 0;
+        while(i < nodeAttributes.length && nodeAttributes[i].compareTo(name) < 0)
+            i += 2;
+        if(i < nodeAttributes.length && nodeAttributes[i].equals(name)){
+            nodeAttributes[i + 1] = value;
+            return;
+        }
+        String[] newAttributes = new String[nodeAttributes.length + 2];
+        System.arraycopy(nodeAttributes, 0, newAttributes, 0, i);
+        newAttributes[i] = name;
+        newAttributes[i + 1] = value;
+        System.arraycopy(nodeAttributes, i, newAttributes, i + 2, nodeAttributes.length - i);
+        attributes[node] = newAttributes;
+    }
+
+    private String getOtherAttribute(int node, String name){
+        String[] nodeAttributes = attributes[node];
+        if(nodeAttributes != null)
+            for(int i = 0; i < nodeAttributes.length; i += 2)
+                if(nodeAttributes[i].equals(name))
+                    return nodeAttributes[i + 1];
+        return null;
+    }
+
+    private void removeOtherAttribute(int node, String name){
+        String[] nodeAttributes = attributes[node];
+        if(nodeAttributes == null)
+            return;
+        for(int i = 0; i < nodeAttributes.length; i += 2){
+            if(nodeAttributes[i].equals(name)){
+                String[] newAttributes = new String[nodeAttributes.length - 2];
+                System.arraycopy(nodeAttributes, 0, newAttributes, 0, i);
+                System.arraycopy(nodeAttributes, i + 2, newAttributes, i, nodeAttributes.length - i - 2);
+                attributes[node] = newAttributes.length == 0 ? null : newAttributes;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param name : name of an element
+     * @return : first element with the name in document order, NONE if there is none
+     */
+    public int findElement(String name){
+        Integer label = nameIds.get(name);
+        if(label == null || root == NONE)
+            return NONE;
+        for(int n = root; n != NONE; n = nextInPreorder(n, root))
+            if(labels[n] == label)
+                return n;
+        return NONE;
+    }
+
+    /**
+     * give the tree to a handler
+     * @param handler : handler of the tree
+     * @throws IOException
+     */
+    public void write(TreeHandler handler) throws IOException {
+        handler.startDocument();
+        int node = root;
+        while(node != NONE){
+            if(isText(node)){
+                handler.characters(texts[node]);
+            }else{
+                handler.startElement(getName(node));
+                writeAttributes(node, handler);
+                if(firstChildren[node] != NONE){
+                    node = firstChildren[node];
+                    continue;
+                }
+                handler.endElement();
+            }
+            // go to the next sibling of the node or of its closest ancestor which has one
+            while(node != root && nextSiblings[node] == NONE){
+                node = parents[node];
+                handler.endElement();
+            }
+            node = node == root ? NONE : nextSiblings[node];
+        }
+        handler.endDocument();
+    }
+
+    /**
+     * give the tree to a node handler, the positions are given as ints
+     * @param handler : handler of the nodes
+     */
+    public void write(NodeHandler handler){
+        StringBuilder text = new StringBuilder();
+        int node = root;
+        while(node != NONE){
+            if(isText(node)){
+                text.append(texts[node]);
+            }else{
+                writeLeaf(text, handler);
+                handler.startNode(getName(node), getPositionOrNone(node, ID), getPositionOrNone(node, LINE_NR),
+                        getPositionOrNone(node, END_LINE_NR), getPositionOrNone(node, COL_NR),
+                        getPositionOrNone(node, END_COL_NR));
+                String[] nodeAttributes = attributes[node];
+                if(nodeAttributes != null)
+                    for(int i = 0; i < nodeAttributes.length; i += 2)
+                        handler.attribute(nodeAttributes[i], nodeAttributes[i + 1]);
+                if(firstChildren[node] != NONE){
+                    node = firstChildren[node];
+                    continue;
+                }
+                handler.endNode();
+            }
+            // go to the next sibling of the node or of its closest ancestor which has one
+            while(node != root && nextSiblings[node] == NONE){
+                node = parents[node];
+                writeLeaf(text, handler);
+                handler.endNode();
+            }
+            node = node == root ? NONE : nextSiblings[node];
+        }
+    }
+
+    private int getPositionOrNone(int node, int position){
+        return (positionMasks[node] & (1 << position)) != 0 ? positions[position][node] : NodeHandler.NO_POSITION;
+    }
+
+    /**
+     * give the texts read since the last node to a handler, with their lines joined
+     */
+    private void writeLeaf(StringBuilder text, NodeHandler handler){
+        if(text.length() == 0)
+            return;
+        String joined = XmlFormatter.joinLines(text);
+        text.setLength(0);
+        if(!joined.isEmpty())
+            handler.leaf(joined);
+    }
+
+    /**
+     * give the positions and the other attributes of an element in the order of their names
+     */
+    private void writeAttributes(int node, TreeHandler handler) throws IOException {
+        String[] nodeAttributes = attributes[node];
+        int i = 0;
+        for(int position : SORTED_POSITIONS){
+            if((positionMasks[node] & (1 << position)) == 0)
+                continue;
+            String name = POSITION_NAMES[position];
+            while(nodeAttributes != null && i < nodeAttributes.length && nodeAttributes[i].compareTo(name) < 0){
+                handler.attribute(nodeAttributes[i], nodeAttributes[i + 1]);
+                i += 2;
+            }
+            handler.position(name, positions[position][node]);
+        }
+        while(nodeAttributes != null && i < nodeAttributes.length){
+            handler.attribute(nodeAttributes[i], nodeAttributes[i + 1]);
+            i += 2;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package be.intimals.pythonConverter;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.Arrays;
+
+/**
+ * Build a CompactTree while parsing a document: each element keeps its line number and its text span.
+ */
+public class CompactTreeHandler extends DefaultHandler {
+
+    private final StringBuilder textBuffer = new StringBuilder();
+    private int[] elementStack = new int[64];
+    private int depth = 0;
+    private Locator locator;
+    private CompactTree tree = new CompactTree(1024);
+    private TextSpans textSpans = new TextSpans();
+
+    @Override
+    public void setDocumentLocator(final Locator locator) {
+        this.locator = locator;
+    }
+
+    @Override
+    public void startElement(final String uri, final String localName,
+                             final String qName, final Attributes attributes) throws SAXException {
+        addTextIfNeeded();
+        int el = tree.createElement(Labels.intern(qName), locator.getLineNumber(), textSpans.startElement());
+        for (int i = 0; i < attributes.getLength(); i++) {
+            tree.setAttribute(el, Labels.intern(attributes.getQName(i)), Labels.internText(attributes.getValue(i)));
+        }
+        if (depth == 0)
+            tree.setRoot(el);
+        else
+            tree.appendChild(elementStack[depth - 1], el);
+        if (depth == elementStack.length)
+            elementStack = Arrays.copyOf(elementStack, depth * 2);
+        elementStack[depth++] = el;
+    }
+
+    @Override
+    public void endElement(final String uri, final String localName,
+                           final String qName) {
+        addTextIfNeeded();
+        textSpans.endElement();
+        --depth;
+    }
+
+    @Override
+    public void characters(final char ch[], final int start, final int length)
+            throws SAXException {
+        textBuffer.append(ch, start, length);
+        textSpans.characters(ch, start, length);
+    }
+
+    // Tree of the document, with its text spans
+    public CompactTree getTree() {
+        tree.setTextSpans(textSpans);
+        return tree;
+    }
+
+    // Outputs text accumulated under the current element
+    private void addTextIfNeeded() {
+        if (textBuffer.length() > 0) {
+            tree.appendChild(elementStack[depth - 1], tree.createText(Labels.internText(textBuffer.toString())));
+            textBuffer.delete(0, textBuffer.length());
+        }
+    }
+}
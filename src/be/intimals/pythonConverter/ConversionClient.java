@@ -0,0 +1,40 @@
+package be.intimals.pythonConverter;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * Send a job to a ConversionServer and wait for its answer.
+ * The source and result directories and the report file are sent as absolute paths,
+ * the server may run in another directory.
+ */
+public class ConversionClient {
+
+    private ConversionClient(){
+    }
+
+    /**
+     * @param port : port of the server on the loopback address
+     * @param args : options, source directory and result directory
+     * @return : 0 if the job is done, 1 otherwise
+     * @throws IOException : if the server cannot be reached
+     */
+    public static int send(int port, String[] args) throws IOException {
+        String[] job = args.clone();
+        for (int i = 0; i < job.length; ++i)
+            if (i >= job.length - 2 || i > 0 && job[i - 1].equals("-report"))
+                job[i] = Paths.get(job[i]).toAbsolutePath().toString();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            out.write(String.join("\t", job) + "\n");
+            out.flush();
+            String answer = in.readLine();
+            System.out.println(answer == null ? "ERROR no answer from the server" : answer);
+            return answer != null && answer.startsWith("OK") ? 0 : 1;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package be.intimals.pythonConverter;
+
+/**
+ * A conversion of a source directory to a result directory with the options of the command line:
+ * [-threads N] [-stream] [-incremental] [-watch [-delay MS]] [-report FILE] [-bundle] [-binary] [-journal | -resume] [-python] [-gzip LEVEL [-gzipPy]] SOURCE_DIR RESULT_DIR
+ */
+public class ConversionJob {
+    private TransformPyAST converter = new TransformPyAST();
+    private boolean watch = false;
+    private long delay = 2000;
+    private String inputDir;
+    private String outputDir;
+
+    private ConversionJob(){
+    }
+
+    /**
+     * @param args : options, source directory and result directory
+     * @return : the job
+     * @throws IllegalArgumentException : if the arguments are not valid, with a message unless they do not follow the usage
+     */
+    public static ConversionJob parse(String[] args){
+        ConversionJob job = new ConversionJob();
+        int nbThreads = 1;
+        boolean streaming = false;
+        boolean incremental = false;
+        String reportFile = null;
+        boolean bundled = false;
+        boolean binary = false;
+        boolean journaled = false;
+        boolean resuming = false;
+        boolean pythonSources = false;
+        int gzipLevel = Utils.UNCOMPRESSED;
+        boolean gzippedPy = false;
+        int i = 0;
+        while (i < args.length && args[i].startsWith("-")) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                nbThreads = Integer.valueOf(args[i + 1]);
+                i += 2;
+            } else if (args[i].equals("-stream")) {
+                streaming = true;
+                ++i;
+            } else if (args[i].equals("-incremental")) {
+                incremental = true;
+                ++i;
+            } else if (args[i].equals("-watch")) {
+                job.watch = true;
+                ++i;
+            } else if (args[i].equals("-delay") && i + 1 < args.length) {
+                job.delay = Long.valueOf(args[i + 1]);
+                i += 2;
+            } else if (args[i].equals("-bundle")) {
+                bundled = true;
+                ++i;
+            } else if (args[i].equals("-binary")) {
+                binary = true;
+                ++i;
+            } else if (args[i].equals("-journal")) {
+                journaled = true;
+                ++i;
+            } else if (args[i].equals("-resume")) {
+                resuming = true;
+                ++i;
+            } else if (args[i].equals("-python")) {
+                pythonSources = true;
+                ++i;
+            } else if (args[i].equals("-gzip") && i + 1 < args.length) {
+                gzipLevel = Integer.valueOf(args[i + 1]);
+                if (gzipLevel < 0 || gzipLevel > 9)
+                    throw new IllegalArgumentException("-gzip LEVEL must be from 0 to 9");
+                i += 2;
+            } else if (args[i].equals("-gzipPy")) {
+                gzippedPy = true;
+                ++i;
+            } else if (args[i].equals("-report") && i + 1 < args.length) {
+                reportFile = args[i + 1];
+                i += 2;
+            } else {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        if (bundled && (incremental || job.watch || resuming))
+            throw new IllegalArgumentException("-bundle cannot be used with -incremental, -watch or -resume");
+        if (pythonSources && (streaming || job.watch))
+            throw new IllegalArgumentException("-python cannot be used with -stream or -watch");
+        if (gzippedPy && gzipLevel == Utils.UNCOMPRESSED)
+            throw new IllegalArgumentException("-gzipPy needs -gzip LEVEL");
+        if (bundled && gzipLevel != Utils.UNCOMPRESSED)
+            throw new IllegalArgumentException("-gzip cannot be used with -bundle");
+        if (args.length - i != 2)
+            throw new IllegalArgumentException();
+        //input source files
+        job.inputDir = args[i];
+        //output results files
+        job.outputDir = args[i + 1];
+        job.converter.setNbThreads(nbThreads);
+        job.converter.setStreaming(streaming);
+        job.converter.setIncremental(incremental);
+        job.converter.setReport(reportFile);
+        job.converter.setBundled(bundled);
+        job.converter.setBinary(binary);
+        job.converter.setJournaled(journaled);
+        job.converter.setResuming(resuming);
+        job.converter.setPythonSources(pythonSources);
+        job.converter.setGzip(gzipLevel, gzippedPy);
+        return job;
+    }
+
+    /**
+     * @return : true if the job keeps watching the source directory
+     */
+    public boolean isWatching(){
+        return watch;
+    }
+
+    /**
+     * do the transformation, a watching job does not return
+     * @return : null if all files are converted, otherwise why the job failed
+     */
+    public String run(){
+        if (watch) {
+            converter.watchPyAST(inputDir, outputDir, delay);
+            return null;
+        }
+        int nbFailed = converter.transformPyAST(inputDir, outputDir);
+        if (converter.getRunFailure() != null)
+            return converter.getRunFailure();
+        return nbFailed == 0 ? null : nbFailed + " failed";
+    }
+}
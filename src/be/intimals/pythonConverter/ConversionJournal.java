@@ -0,0 +1,106 @@
+package be.intimals.pythonConverter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Journal of the outcome of each file of a run, written in the result directory as soon as a file is finished,
+ * so that a run which stopped can be resumed where it stopped.
+ * A line is an outcome, the input XML (relative to the source directory) and for a failed file the reason,
+ * separated by tabs. The last outcome of a file counts.
+ */
+public class ConversionJournal implements Closeable {
+    public static final String FILE_NAME = "pyConverter.journal";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+    public static final String SKIPPED = "skipped";
+
+    private Path sourceDir;
+    // relative input file -> last outcome of the previous runs
+    private Map<String, String> outcomes = new HashMap<>();
+    private Writer writer;
+    private int[] counts = new int[3];
+
+    /**
+     * open the journal of a result directory
+     * @param sourceDir : directory contains xml files exported by pyRegurgitator
+     * @param outputDir : directory contains xml files for freqtals
+     * @param resume : true to keep the journal of the previous runs, false to start a new one
+     * @throws IOException
+     */
+    public ConversionJournal(String sourceDir, String outputDir, boolean resume) throws IOException {
+        this.sourceDir = Paths.get(sourceDir).toAbsolutePath().normalize();
+        Path journalFile = Paths.get(outputDir, FILE_NAME);
+        if(resume && Files.exists(journalFile)){
+            try(BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+                String line;
+                while((line = reader.readLine()) != null){
+                    String[] fields = line.split("\t");
+                    if(fields.length >= 2)
+                        outcomes.put(fields[1], fields[0]);
+                }
+            }
+        }
+        Files.createDirectories(journalFile.getParent());
+        writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, resume ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * @param xmlFile : input xml file
+     * @return : true if a previous run converted the file or skipped it because its output was up to date
+     */
+    public boolean isFinished(String xmlFile){
+        String outcome = outcomes.get(getKey(xmlFile));
+        return DONE.equals(outcome) || SKIPPED.equals(outcome);
+    }
+
+    /**
+     * record a file which has been converted
+     */
+    public void done(String xmlFile) throws IOException {
+        write(0, DONE, xmlFile, null);
+    }
+
+    /**
+     * record a file which could not be converted
+     * @param reason : the error, on one line
+     */
+    public void failed(String xmlFile, String reason) throws IOException {
+        write(1, FAILED, xmlFile, reason.replaceAll("[\t\r\n]+", " "));
+    }
+
+    /**
+     * record a file which has not been converted because its output is up to date
+     */
+    public void skipped(String xmlFile) throws IOException {
+        write(2, SKIPPED, xmlFile, null);
+    }
+
+    /**
+     * @return : numbers of files done, failed and skipped by this run
+     */
+    public synchronized String getSummary(){
+        return "done: " + counts[0] + ", failed: " + counts[1] + ", skipped: " + counts[2];
+    }
+
+    /**
+     * write an outcome and flush it, so that it is kept if the run is stopped
+     */
+    private synchronized void write(int count, String outcome, String xmlFile, String reason) throws IOException {
+        ++counts[count];
+        writer.write(outcome + "\t" + getKey(xmlFile) + (reason == null ? "" : "\t" + reason));
+        writer.write('\n');
+        writer.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private String getKey(String xmlFile){
+        return sourceDir.relativize(Paths.get(xmlFile).toAbsolutePath().normalize()).toString();
+    }
+}
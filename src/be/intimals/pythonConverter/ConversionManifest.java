@@ -0,0 +1,123 @@
+package be.intimals.pythonConverter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Manifest of the files converted in a result directory.
+ * For each input XML (relative to the source directory) it keeps the SHA-256 hash of the XML, of its Python file
+ * and of the output options, so that the pairs which did not change since the last run with the same options
+ * can be skipped.
+ * The manifest is ignored if it was written by another version of the converter.
+ */
+public class ConversionManifest {
+    // to be increased when the output of the converter changes
+    public static final String CONVERTER_VERSION = "2";
+    public static final String FILE_NAME = "pyConverter.manifest";
+
+    private Path sourceDir;
+    private Path manifestFile;
+    // relative input file -> hash
+    private Map<String, String> entries = new TreeMap<>();
+
+    /**
+     * read the manifest of a result directory if it exists
+     * @param sourceDir : directory contains xml files exported by pyRegurgitator
+     * @param outputDir : directory contains xml files for freqtals
+     */
+    public ConversionManifest(String sourceDir, String outputDir) throws IOException {
+        this.sourceDir = Paths.get(sourceDir).toAbsolutePath().normalize();
+        this.manifestFile = Paths.get(outputDir, FILE_NAME);
+        if(!Files.exists(manifestFile))
+            return;
+        try(BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if(line == null || !line.equals("version " + CONVERTER_VERSION))
+                return;
+            while((line = reader.readLine()) != null){
+                int separator = line.indexOf("  ");
+                if(separator > 0)
+                    entries.put(line.substring(separator + 2), line.substring(0, separator));
+            }
+        }
+    }
+
+    /**
+     * @param xmlFile : input xml file, which does not exist if the python file is parsed by PySourceParser
+     * @param options : options which change the outputs of the file
+     * @return : hash of the xml file, of its python file and of the options
+     */
+    public static String hash(String xmlFile, String options) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        Path xml = Paths.get(xmlFile);
+        if(Files.exists(xml))
+            digest.update(Files.readAllBytes(xml));
+        Path pyFile = Paths.get(Utils.getPyFile(xmlFile));
+        if(Files.exists(pyFile))
+            digest.update(Files.readAllBytes(pyFile));
+        digest.update(options.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder();
+        for(byte b : digest.digest())
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    /**
+     * @param xmlFile : input xml file
+     * @param hash : current hash of the file
+     * @return : true if the file was converted with the same hash
+     */
+    public synchronized boolean isUnchanged(String xmlFile, String hash){
+        return hash.equals(entries.get(getKey(xmlFile)));
+    }
+
+    /**
+     * @return : absolute names of the input files of the manifest
+     */
+    public synchronized List<String> getFiles(){
+        List<String> files = new ArrayList<>();
+        for(String key : entries.keySet())
+            files.add(sourceDir.resolve(key).toString());
+        return files;
+    }
+
+    /**
+     * record a file which has been converted
+     */
+    public synchronized void put(String xmlFile, String hash){
+        entries.put(getKey(xmlFile), hash);
+    }
+
+    public synchronized void remove(String xmlFile){
+        entries.remove(getKey(xmlFile));
+    }
+
+    /**
+     * write the manifest to the result directory
+     */
+    public synchronized void save() throws IOException {
+        Path tmpFile = manifestFile.resolveSibling(FILE_NAME + ".tmp");
+        try(BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+            writer.write("version " + CONVERTER_VERSION);
+            writer.newLine();
+            for(Map.Entry<String, String> entry : entries.entrySet()){
+                writer.write(entry.getValue() + "  " + entry.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(tmpFile, manifestFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private String getKey(String xmlFile){
+        return sourceDir.relativize(Paths.get(xmlFile).toAbsolutePath().normalize()).toString();
+    }
+}
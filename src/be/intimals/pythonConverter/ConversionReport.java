@@ -0,0 +1,176 @@
+package be.intimals.pythonConverter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Statistics of the files converted in a run, written as a JSON report:
+ * the percentiles of the time and allocated bytes of each phase and of the counters over all files,
+ * then the statistics of each file.
+ */
+public class ConversionReport {
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private List<ConversionStats> files = new ArrayList<>();
+    private long startTime = System.nanoTime();
+    private int nbThreads;
+
+    public ConversionReport(int nbThreads){
+        this.nbThreads = nbThreads;
+    }
+
+    public synchronized void add(ConversionStats stats){
+        files.add(stats);
+    }
+
+    /**
+     * write the report
+     * @param fileName : JSON file
+     * @throws IOException
+     */
+    public synchronized void write(String fileName) throws IOException {
+        List<ConversionStats> sortedFiles = new ArrayList<>(files);
+        sortedFiles.sort(Comparator.comparing(ConversionStats::getFile));
+        int nbFailed = 0;
+        for(ConversionStats stats : sortedFiles)
+            if(!stats.isDone()) ++nbFailed;
+
+        try(Writer out = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(Paths.get(fileName)), StandardCharsets.UTF_8))) {
+            out.write("{\n");
+            out.write("  \"files\": " + sortedFiles.size() + ",\n");
+            out.write("  \"failed\": " + nbFailed + ",\n");
+            out.write("  \"threads\": " + nbThreads + ",\n");
+            out.write("  \"wallTimeMs\": " + toMs(System.nanoTime() - startTime) + ",\n");
+
+            // aggregates
+            out.write("  \"phases\": {\n");
+            for(int phase = 0; phase <= ConversionStats.PHASES.length; ++phase){
+                long[] times = new long[sortedFiles.size()];
+                long[] bytes = new long[sortedFiles.size()];
+                for(int i = 0; i < sortedFiles.size(); ++i){
+                    times[i] = getTime(sortedFiles.get(i), phase);
+                    bytes[i] = getAllocatedBytes(sortedFiles.get(i), phase);
+                }
+                out.write("    \"" + getPhaseName(phase) + "\": {\"timeMs\": ");
+                writeDistribution(out, times, true);
+                out.write(", \"allocatedBytes\": ");
+                writeDistribution(out, bytes, false);
+                out.write(phase < ConversionStats.PHASES.length ? "},\n" : "}\n");
+            }
+            out.write("  },\n");
+            out.write("  \"counters\": {\n");
+            for(int counter = 0; counter < ConversionStats.COUNTERS.length; ++counter){
+                long[] values = new long[sortedFiles.size()];
+                for(int i = 0; i < sortedFiles.size(); ++i)
+                    values[i] = sortedFiles.get(i).getCounter(counter);
+                out.write("    \"" + ConversionStats.COUNTERS[counter] + "\": ");
+                writeDistribution(out, values, false);
+                out.write(counter < ConversionStats.COUNTERS.length - 1 ? ",\n" : "\n");
+            }
+            out.write("  },\n");
+
+            // files
+            out.write("  \"perFile\": [");
+            for(int i = 0; i < sortedFiles.size(); ++i){
+                ConversionStats stats = sortedFiles.get(i);
+                out.write(i == 0 ? "\n" : ",\n");
+                out.write("    {\"file\": \"" + escape(stats.getFile()) + "\", \"done\": " + stats.isDone());
+                out.write(", \"timeMs\": {");
+                for(int phase = 0; phase <= ConversionStats.PHASES.length; ++phase){
+                    out.write((phase > 0 ? ", \"" : "\"") + getPhaseName(phase) + "\": " + toMs(getTime(stats, phase)));
+                }
+                out.write("}, \"allocatedBytes\": {");
+                for(int phase = 0; phase <= ConversionStats.PHASES.length; ++phase){
+                    out.write((phase > 0 ? ", \"" : "\"") + getPhaseName(phase) + "\": " + getAllocatedBytes(stats, phase));
+                }
+                out.write("}, \"counters\": {");
+                for(int counter = 0; counter < ConversionStats.COUNTERS.length; ++counter){
+                    out.write((counter > 0 ? ", \"" : "\"") + ConversionStats.COUNTERS[counter] + "\": " + stats.getCounter(counter));
+                }
+                out.write("}}");
+            }
+            out.write(sortedFiles.isEmpty() ? "]\n" : "\n  ]\n");
+            out.write("}\n");
+        }
+    }
+
+    /**
+     * the phase after the last one is the total of all phases
+     */
+    private String getPhaseName(int phase){
+        return phase < ConversionStats.PHASES.length ? ConversionStats.PHASES[phase] : "total";
+    }
+
+    private long getTime(ConversionStats stats, int phase){
+        if(phase < ConversionStats.PHASES.length)
+            return stats.getTime(phase);
+        long total = 0;
+        for(int i = 0; i < ConversionStats.PHASES.length; ++i)
+            total += stats.getTime(i);
+        return total;
+    }
+
+    private long getAllocatedBytes(ConversionStats stats, int phase){
+        if(phase < ConversionStats.PHASES.length)
+            return stats.getAllocatedBytes(phase);
+        long total = 0;
+        for(int i = 0; i < ConversionStats.PHASES.length; ++i)
+            total += stats.getAllocatedBytes(i);
+        return total;
+    }
+
+    /**
+     * write the total, percentiles and maximum of values
+     * @param values : values of all files
+     * @param nanoseconds : the values are times written in milliseconds
+     */
+    private void writeDistribution(Writer out, long[] values, boolean nanoseconds) throws IOException {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for(long value : sorted)
+            total += value;
+        out.write("{\"total\": " + format(total, nanoseconds));
+        for(double percentile : PERCENTILES)
+            out.write(", \"p" + (int) percentile + "\": " + format(getPercentile(sorted, percentile), nanoseconds));
+        out.write(", \"max\": " + format(sorted.length == 0 ? 0 : sorted[sorted.length - 1], nanoseconds) + "}");
+    }
+
+    /**
+     * @param sorted : sorted values
+     * @param percentile : percentile
+     * @return : the nearest-rank percentile, 0 if there is no value
+     */
+    private long getPercentile(long[] sorted, double percentile){
+        if(sorted.length == 0)
+            return 0;
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    private String format(long value, boolean nanoseconds){
+        return nanoseconds ? toMs(value) : String.valueOf(value);
+    }
+
+    private String toMs(long nanoseconds){
+        return String.format(Locale.ROOT, "%.3f", nanoseconds / 1e6);
+    }
+
+    private String escape(String text){
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < text.length(); ++i){
+            char c = text.charAt(i);
+            if(c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if(c < ' ')
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package be.intimals.pythonConverter;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Convert the jobs sent by clients in one JVM, so the classes, the parsers and the compiled code are reused.
+ *
+ * The server listens on a port of the loopback address. A client sends one job per line: the arguments of
+ * the command line separated by tabs, e.g. "-threads\t4\t/data/in\t/data/out". For each job the server
+ * answers one line: "OK" and the time in milliseconds, or "ERROR" and the reason, e.g. the number of files
+ * which could not be converted.
+ * The jobs of a connection are done one after the other, connections are served in parallel.
+ */
+public class ConversionServer {
+    private int port;
+    private ExecutorService connections = Executors.newCachedThreadPool();
+
+    /**
+     * @param port : port to listen to, 0 for any free port
+     */
+    public ConversionServer(int port){
+        this.port = port;
+    }
+
+    /**
+     * serve the clients until the JVM is stopped
+     * @throws IOException
+     */
+    public void run() throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("Converter server listening on port " + server.getLocalPort());
+            while (true) {
+                Socket socket = server.accept();
+                connections.execute(() -> serve(socket));
+            }
+        }
+    }
+
+    /**
+     * do the jobs of a connection
+     * @param socket : connection of a client
+     */
+    private void serve(Socket socket){
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+                out.write(runJob(line.split("\t")) + "\n");
+                out.flush();
+            }
+        }catch (IOException e){
+            System.out.println("Connection error " + e);
+        }
+    }
+
+    /**
+     * @param args : arguments of the job
+     * @return : answer to the client
+     */
+    String runJob(String[] args){
+        ConversionJob job;
+        try {
+            job = ConversionJob.parse(args);
+        }catch (IllegalArgumentException e){
+            return "ERROR " + (e.getMessage() == null ? "usage: [options] SOURCE_DIR RESULT_DIR" : e.getMessage());
+        }
+        if (job.isWatching())
+            return "ERROR -watch cannot be used with the server";
+        long start = System.nanoTime();
+        String failure = job.run();
+        if (failure != null)
+            return "ERROR " + failure;
+        return "OK " + (System.nanoTime() - start) / 1000000;
+    }
+}
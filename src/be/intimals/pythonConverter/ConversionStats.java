@@ -0,0 +1,113 @@
+package be.intimals.pythonConverter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Wall-clock time and allocated bytes of the phases of the conversion of one file, and counters of its nodes.
+ * The phases are measured one after the other on the thread converting the file.
+ */
+public class ConversionStats {
+    public static final int COPY_PY = 0;
+    public static final int READ_PY = 1;
+    public static final int PARSE = 2;
+    public static final int TRANSFORM = 3;
+    public static final int WRITE = 4;
+    public static final String[] PHASES = {"copyPy", "readPy", "parse", "transform", "write"};
+
+    public static final int ELEMENTS = 0;
+    public static final int INTERMEDIATE_NODES = 1;
+    public static final int IDENTIFIERS = 2;
+    public static final int COLUMN_LOOKUPS = 3;
+    public static final int COLUMN_FALLBACKS = 4;
+    public static final String[] COUNTERS = {"elements", "intermediateNodes", "identifiers", "columnLookups",
+            "columnFallbacks"};
+
+    private static ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private String file;
+    private boolean done = false;
+    private long[] times = new long[PHASES.length];
+    private long[] allocatedBytes = new long[PHASES.length];
+    private long[] counters = new long[COUNTERS.length];
+    // phase being measured, the one after the last ended phase
+    private int currentPhase = COPY_PY;
+    // start of the current phase
+    private long lastTime;
+    private long lastAllocatedBytes;
+
+    /**
+     * start measuring the first phase
+     * @param file : converted file
+     */
+    public ConversionStats(String file){
+        this.file = file;
+        lastTime = System.nanoTime();
+        lastAllocatedBytes = getAllocatedBytes();
+    }
+
+    /**
+     * @return : bytes allocated by the current thread, 0 if the JVM does not measure them
+     */
+    private static long getAllocatedBytes(){
+        if(threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return 0;
+    }
+
+    /**
+     * end a phase and start the next one
+     * @param phase : the phase which ends
+     */
+    public void endPhase(int phase){
+        long time = System.nanoTime();
+        long bytes = getAllocatedBytes();
+        times[phase] += time - lastTime;
+        allocatedBytes[phase] += bytes - lastAllocatedBytes;
+        lastTime = time;
+        lastAllocatedBytes = bytes;
+        currentPhase = Math.min(phase + 1, PHASES.length - 1);
+    }
+
+    /**
+     * end the phase being measured, when the conversion stops before its end
+     */
+    public void endCurrentPhase(){
+        endPhase(currentPhase);
+    }
+
+    public void count(int counter){
+        ++counters[counter];
+    }
+
+    public void setCounter(int counter, long value){
+        counters[counter] = value;
+    }
+
+    public void setDone(boolean done){
+        this.done = done;
+    }
+
+    public String getFile(){
+        return file;
+    }
+
+    public boolean isDone(){
+        return done;
+    }
+
+    /**
+     * @return : time of a phase in nanoseconds
+     */
+    public long getTime(int phase){
+        return times[phase];
+    }
+
+    public long getAllocatedBytes(int phase){
+        return allocatedBytes[phase];
+    }
+
+    public long getCounter(int counter){
+        return counters[counter];
+    }
+}
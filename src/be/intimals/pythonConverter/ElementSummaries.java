@@ -0,0 +1,154 @@
+package be.intimals.pythonConverter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * Summary of the elements of a document collected by the first pass of StreamTransformPyAST: the text spans
+ * of TextSpans, the number of child nodes of each element, whether it has AST children and the names of its
+ * repeated non-AST children. The summary is kept in temporary files instead of the heap, each element has a
+ * record at the position of its number and the text of the document is in a second file, so the memory used
+ * by the first pass only depends on the depth of the document.
+ */
+class ElementSummaries extends TextSpans implements Closeable {
+    // record of an element: first and last positions of its text, number of lines, number of child nodes,
+    // and its kinds of children: 1 if it has AST children, plus 2 * (1 + number of its set of repeated children)
+    private static final int RECORD_SIZE = 32;
+    private static final int FIRST = 0;
+    private static final int LAST = 8;
+    private static final int NB_LINES = 16;
+    private static final int NB_CHILD_NODES = 20;
+    private static final int CHILDREN = 24;
+
+    private final PagedFile records;
+    private final PagedFile content;
+    private long contentLength = 0;
+    // sets of names of repeated children, an element refers to its set by number
+    private final Map<Set<String>, Integer> repeatedNumbers = new HashMap<>();
+    private final List<Set<String>> repeatedSets = new ArrayList<>();
+
+    ElementSummaries() throws IOException {
+        records = new PagedFile("pyConverterElements");
+        try {
+            content = new PagedFile("pyConverterText");
+        } catch (IOException e) {
+            records.close();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void addContent(char[] ch, int start, int length){
+        try {
+            content.putChars(contentLength * 2, ch, start, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        contentLength += length;
+    }
+
+    @Override
+    protected void setSpan(int element, int nbLines, long first, long last){
+        long record = (long) element * RECORD_SIZE;
+        try {
+            records.putLong(record + FIRST, first);
+            records.putLong(record + LAST, last);
+            records.putInt(record + NB_LINES, nbLines);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * keep what is known about the children of an element
+     * @param element : index of the element
+     * @param nbChildNodes : number of child elements and texts
+     * @param containsAstNode : true if an element child is an AST node
+     * @param repeated : names of the non-AST element children which occur more than once
+     */
+    void setChildren(int element, int nbChildNodes, boolean containsAstNode, Set<String> repeated){
+        int children = containsAstNode ? 1 : 0;
+        if(!repeated.isEmpty()){
+            Integer number = repeatedNumbers.get(repeated);
+            if(number == null){
+                number = repeatedSets.size();
+                repeatedSets.add(repeated);
+                repeatedNumbers.put(repeated, number);
+            }
+            children += 2 * (number + 1);
+        }
+        long record = (long) element * RECORD_SIZE;
+        try {
+            records.putInt(record + NB_CHILD_NODES, nbChildNodes);
+            records.putInt(record + CHILDREN, children);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int getNbLines(int element){
+        return getInt(element, NB_LINES);
+    }
+
+    @Override
+    public String getText(int element){
+        long record = (long) element * RECORD_SIZE;
+        try {
+            if(records.getInt(record + NB_LINES) != 1)
+                return null;
+            long first = records.getLong(record + FIRST);
+            long last = records.getLong(record + LAST);
+            return content.getChars(first * 2, (int) (last - first + 1));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param element : index of an element
+     * @return : number of child elements and texts of the element
+     */
+    int getNbChildNodes(int element){
+        return getInt(element, NB_CHILD_NODES);
+    }
+
+    /**
+     * @param element : index of an element
+     * @return : true if an element child of the element is an AST node
+     */
+    boolean containsAstNode(int element){
+        return (getInt(element, CHILDREN) & 1) != 0;
+    }
+
+    /**
+     * @param element : index of an element
+     * @return : names of the repeated non-AST children of the element, null if there is none
+     */
+    Set<String> getRepeatedChildren(int element){
+        int number = getInt(element, CHILDREN) / 2;
+        return number == 0 ? null : repeatedSets.get(number - 1);
+    }
+
+    private int getInt(int element, int field){
+        try {
+            return records.getInt((long) element * RECORD_SIZE + field);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * delete the temporary files
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            records.close();
+        } finally {
+            content.close();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package be.intimals.pythonConverter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pools of the element names, attribute names and short texts of the converted files, shared by all files and threads.
+ *
+ * A name read or created by the converters is replaced by the instance of the pool, so the same name is one string
+ * for the whole run, and it can be compared with the constants below by identity: the constants are the first
+ * instances of the pool. The names are always kept.
+ * The texts are in a second pool, bounded, which keeps the frequent ones: a short text enters the pool the second
+ * time it is seen, the previous texts are remembered in a small table where they replace each other. When the pool
+ * is full, the counts of uses of its texts are halved and the texts not used since the last time are removed.
+ */
+public final class Labels {
+    public static final String MODULE = "Module";
+    public static final String BODY = "body";
+    public static final String BLOCK = "Block";
+    public static final String STATEMENTS = "statements";
+    public static final String NAME_DEF = "nameDef";
+    public static final String NAME = "Name";
+    public static final String IDENTIFIER = "identifier";
+    public static final String CLASS_DEF = "ClassDef";
+    public static final String FUNCTION_DEF = "FunctionDef";
+    public static final String CMPOP = "cmpop";
+    public static final String ATTR = "attr";
+    public static final String NAME_ATTRIBUTE = "name";
+    public static final String BIN_OP = "BinOp";
+    public static final String OP = "Op";
+    public static final String ID = "ID";
+    public static final String LINE_NR = "LineNr";
+    public static final String END_LINE_NR = "EndLineNr";
+    public static final String COL_NR = "ColNr";
+    public static final String END_COL_NR = "EndColNr";
+
+    // longest text kept in the pool
+    private static final int MAX_TEXT_LENGTH = 64;
+    // number of texts of the pool
+    private static final int MAX_TEXTS = 1 << 16;
+    // number of texts seen once which are remembered
+    private static final int NB_CANDIDATES = 1 << 14;
+
+    private static final Map<String, String> pool = new ConcurrentHashMap<>();
+    private static final Map<String, PooledText> texts = new ConcurrentHashMap<>();
+    // last text seen once for each hash, a text is pooled if it is seen again before being replaced
+    private static final String[] candidates = new String[NB_CANDIDATES];
+
+    /**
+     * a text of the pool and its number of uses, counted without synchronization since it only needs to be close
+     */
+    private static final class PooledText {
+        final String text;
+        int nbUses = 1;
+
+        PooledText(String text){
+            this.text = text;
+        }
+    }
+
+    static {
+        for (String label : new String[]{MODULE, BODY, BLOCK, STATEMENTS, NAME_DEF, NAME, IDENTIFIER, CLASS_DEF,
+                FUNCTION_DEF, CMPOP, ATTR, NAME_ATTRIBUTE, BIN_OP, OP, ID, LINE_NR, END_LINE_NR, COL_NR, END_COL_NR})
+            pool.put(label, label);
+    }
+
+    private Labels(){
+    }
+
+    /**
+     * @param name : name of an element or of an attribute
+     * @return : the instance of the name in the pool
+     */
+    public static String intern(String name){
+        String pooled = pool.putIfAbsent(name, name);
+        return pooled == null ? name : pooled;
+    }
+
+    /**
+     * @param text : text of a leaf or value of an attribute
+     * @return : the instance of the text in the pool, or the text if it is not kept in the pool
+     */
+    public static String internText(String text){
+        if(text.length() > MAX_TEXT_LENGTH)
+            return text;
+        PooledText pooled = texts.get(text);
+        if(pooled != null){
+            ++pooled.nbUses;
+            return pooled.text;
+        }
+        int slot = text.hashCode() & (NB_CANDIDATES - 1);
+        String candidate = candidates[slot];
+        if(!text.equals(candidate)){
+            candidates[slot] = text;
+            return text;
+        }
+        if(texts.size() >= MAX_TEXTS)
+            removeRareTexts();
+        pooled = texts.putIfAbsent(candidate, new PooledText(candidate));
+        return pooled == null ? candidate : pooled.text;
+    }
+
+    /**
+     * halve the counts of uses of the texts and remove the texts which have not been used since the last time
+     */
+    private static synchronized void removeRareTexts(){
+        if(texts.size() < MAX_TEXTS)
+            return;
+        texts.values().removeIf(pooled -> (pooled.nbUses >>= 1) == 0);
+    }
+
+    /**
+     * @return : number of names in the pool
+     */
+    public static int size(){
+        return pool.size();
+    }
+}
@@ -0,0 +1,137 @@
+package be.intimals.pythonConverter;
+
+import java.io.*;
+
+/**
+ * Heap budget shared by the worker threads: a file is transformed only when its estimated memory fits in
+ * what the files being transformed leave of the budget, otherwise its thread waits.
+ * A file larger than the whole budget is transformed when no other file is, so it can always start.
+ *
+ * The estimate was measured with the smallest heap converting files of CorpusGenerator, from flat files to
+ * chains of thousands of operators. The tree of an XML takes up to 24 times the size of the XML, whatever its
+ * depth. The streaming transformation keeps a frame per open element instead, so it depends on the depth of
+ * the XML, which is read once to find it. The Python file is kept with its line index and the positions of
+ * its words. The sizes of compressed files are the sizes of their content.
+ */
+public class MemoryBudget {
+    private static final long TREE_BYTES_PER_XML_BYTE = 24;
+    private static final long STREAM_BYTES_PER_LEVEL = 1024;
+    private static final long TREE_BYTES_PER_PY_BYTE = 20;
+    private static final long STREAM_BYTES_PER_PY_BYTE = 6;
+    // size of the XML of pyRegurgitator for a Python file parsed by PySourceParser
+    private static final long XML_BYTES_PER_PY_BYTE = 12;
+    // part of the maximum heap given to the files, the rest is left to the JVM and the buffers
+    private static final double HEAP_RATIO = 0.75;
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int GZIP_TRAILER_SIZE = 18;
+
+    private long budget;
+    private long used = 0;
+    private int nbRunning = 0;
+
+    /**
+     * @param budget : bytes which can be used by the files transformed at the same time
+     */
+    public MemoryBudget(long budget){
+        this.budget = budget;
+    }
+
+    /**
+     * @return : a budget taking a part of the maximum heap of the JVM
+     */
+    public static MemoryBudget ofMaxHeap(){
+        return new MemoryBudget((long) (Runtime.getRuntime().maxMemory() * HEAP_RATIO));
+    }
+
+    /**
+     * @param xmlFile : input xml file, or the xml of a python file parsed by PySourceParser
+     * @param streaming : true if the file is transformed by StreamTransformPyAST
+     * @return : estimated bytes used while transforming the file
+     */
+    public static long estimate(String xmlFile, boolean streaming){
+        File pyFile = new File(Utils.getPyFile(xmlFile));
+        File xml = new File(xmlFile);
+        long pyLength = getContentLength(pyFile);
+        if(streaming)
+            return getDepth(xml) * STREAM_BYTES_PER_LEVEL + pyLength * STREAM_BYTES_PER_PY_BYTE;
+        long xmlLength = xml.exists() ? getContentLength(xml) : pyLength * XML_BYTES_PER_PY_BYTE;
+        return xmlLength * TREE_BYTES_PER_XML_BYTE + pyLength * TREE_BYTES_PER_PY_BYTE;
+    }
+
+    /**
+     * @param file : input file, compressed with gzip or not
+     * @return : size of the content of the file, modulo 4 GB if it is compressed, 0 if it cannot be read
+     */
+    private static long getContentLength(File file){
+        long length = file.length();
+        if(length < GZIP_TRAILER_SIZE)
+            return length;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if(in.read() != GZIP_MAGIC_1 || in.read() != GZIP_MAGIC_2)
+                return length;
+            // the trailer of gzip ends with the size of the content, little endian
+            in.seek(length - 4);
+            long size = 0;
+            for(int i = 0; i < 4; ++i)
+                size |= (long) in.read() << (8 * i);
+            return size;
+        }catch (IOException e){
+            return 0;
+        }
+    }
+
+    /**
+     * @param xml : xml file, compressed with gzip or not
+     * @return : maximal number of nested elements, 0 if the file cannot be read
+     */
+    private static int getDepth(File xml){
+        if(!xml.exists())
+            return 0;
+        try (InputStream in = Utils.openInputFile(xml.getPath())) {
+            int depth = 0;
+            int maxDepth = 0;
+            int previous = 0;
+            int c;
+            while((c = in.read()) >= 0){
+                if(previous == '<'){
+                    // end tag, or start tag unless it is a declaration, a comment or a processing instruction
+                    if(c == '/'){
+                        --depth;
+                    }else if(c != '?' && c != '!'){
+                        maxDepth = Math.max(maxDepth, ++depth);
+                    }
+                }else if(previous == '/' && c == '>'){
+                    // empty element
+                    --depth;
+                }
+                previous = c;
+            }
+            return maxDepth;
+        }catch (IOException e){
+            return 0;
+        }
+    }
+
+    /**
+     * wait until the estimated bytes of a file fit in the budget and reserve them
+     * @param bytes : estimated bytes of the file
+     * @throws InterruptedException
+     */
+    public synchronized void acquire(long bytes) throws InterruptedException {
+        while(nbRunning > 0 && used + bytes > budget)
+            wait();
+        used += bytes;
+        ++nbRunning;
+    }
+
+    /**
+     * give back the bytes of a file which has been transformed
+     * @param bytes : estimated bytes of the file
+     */
+    public synchronized void release(long bytes){
+        used -= bytes;
+        --nbRunning;
+        notifyAll();
+    }
+}
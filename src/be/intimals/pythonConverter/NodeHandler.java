@@ -0,0 +1,20 @@
+package be.intimals.pythonConverter;
+
+/**
+ * Receives a converted tree in document order, see PyConverter.
+ * The start of a node gives its label and its positions, then its other attributes (e.g. name, ctx)
+ * are given in the order of their names, then its children: nodes and leaves.
+ * A leaf is a text as written in the XML output: its lines are joined and it is not empty.
+ */
+public interface NodeHandler {
+    // value of a position which is not set, e.g. in the nodes around the Module node
+    int NO_POSITION = -1;
+
+    void startNode(String label, int id, int lineNr, int endLineNr, int colNr, int endColNr);
+
+    void attribute(String name, String value);
+
+    void leaf(String text);
+
+    void endNode();
+}
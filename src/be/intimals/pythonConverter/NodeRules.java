@@ -0,0 +1,108 @@
+package be.intimals.pythonConverter;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.Character.isUpperCase;
+
+/**
+ * Table of the transformation rules of the elements, keyed by their name in Labels, so that a node finds its
+ * rule with one lookup by identity instead of comparing its name with each special case.
+ * The elements which have no rule of their own are transformed from the kinds of their children:
+ * - an AST node containing AST nodes gets an intermediate node "list" + name holding its children
+ * - an AST node containing non-AST nodes with the same name gets these nodes numbered
+ * - a non-AST node containing only non-AST nodes gets its children promoted to AST nodes
+ *
+ * The table can be changed before the transformation starts, it is then only read and can be shared by threads.
+ */
+public class NodeRules {
+
+    public enum Rule {
+        // transformed from the kinds of its children
+        CHILDREN,
+        // added by the transformation, kept as it is
+        IGNORE,
+        // ClassDef, FunctionDef: a nameDef -> Name -> identifier is added, then transformed from its children
+        DECLARATION,
+        // cmpop, attr, name: its text becomes Name -> identifier
+        OPERATOR,
+        // body: its AST children are moved to Block -> statements
+        BODY
+    }
+
+    // rules of a default transformation
+    static final NodeRules DEFAULT = new NodeRules();
+
+    private final Map<String, Rule> rules = new IdentityHashMap<>();
+    // names computed from the name of a node, shared by all files
+    private final Map<String, String> listLabels = new ConcurrentHashMap<>();
+    private final Map<String, String> astLabels = new ConcurrentHashMap<>();
+
+    /**
+     * create the rules of the INTIMALS format
+     */
+    public NodeRules(){
+        set(Labels.NAME_DEF, Rule.IGNORE);
+        set(Labels.IDENTIFIER, Rule.IGNORE);
+        set(Labels.CLASS_DEF, Rule.DECLARATION);
+        set(Labels.FUNCTION_DEF, Rule.DECLARATION);
+        set(Labels.CMPOP, Rule.OPERATOR);
+        set(Labels.ATTR, Rule.OPERATOR);
+        set(Labels.NAME_ATTRIBUTE, Rule.OPERATOR);
+        set(Labels.BODY, Rule.BODY);
+    }
+
+    /**
+     * @param label : name of an element
+     * @param rule : rule of the elements with this name
+     * @return : this table
+     */
+    public NodeRules set(String label, Rule rule){
+        rules.put(Labels.intern(label), rule);
+        return this;
+    }
+
+    /**
+     * @param label : name of an element, in Labels
+     * @return : rule of the element
+     */
+    public Rule get(String label){
+        Rule rule = rules.get(label);
+        return rule == null ? Rule.CHILDREN : rule;
+    }
+
+    /**
+     * @param label : name of an element, in Labels
+     * @return : true if the element is an AST node (its name starts with an upper case letter)
+     */
+    public static boolean isAstLabel(String label){
+        return isUpperCase(label.charAt(0));
+    }
+
+    /**
+     * @param label : name of an AST node containing AST nodes
+     * @return : name of its intermediate node
+     */
+    public String getListLabel(String label){
+        String listLabel = listLabels.get(label);
+        if(listLabel == null){
+            listLabel = Labels.intern("list" + label);
+            listLabels.put(label, listLabel);
+        }
+        return listLabel;
+    }
+
+    /**
+     * @param label : name of a non-AST node
+     * @return : name of the node promoted to an AST node, with an upper case first letter
+     */
+    public String getAstLabel(String label){
+        String astLabel = astLabels.get(label);
+        if(astLabel == null){
+            astLabel = Labels.intern(Character.toUpperCase(label.charAt(0)) + label.substring(1));
+            astLabels.put(label, astLabel);
+        }
+        return astLabel;
+    }
+}
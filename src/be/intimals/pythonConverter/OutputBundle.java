@@ -0,0 +1,157 @@
+package be.intimals.pythonConverter;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Output of a run written to a few large bundle files instead of one file per output.
+ * Each bundle file is the concatenation of output files (xml, python and tree files), the index file gives
+ * for each output file name its bundle file, offset and length in bytes.
+ * A bundle file is written by one thread at a time, so there are at most as many bundles as threads.
+ * The output files of an input are added to the index when all of them are written, the output files of an
+ * input which failed are removed from the end of the bundle file.
+ * If several inputs have the same output name, the index keeps the last one written.
+ */
+public class OutputBundle implements Closeable {
+    public static final String INDEX_FILE = "pyConverter.index";
+    public static final String BUNDLE_PREFIX = "pyConverter_";
+    public static final String BUNDLE_SUFFIX = ".bundle";
+
+    private String outputDir;
+    private List<Part> parts = new ArrayList<>();
+    private Deque<Part> freeParts = new ArrayDeque<>();
+    // output file name -> bundle file, offset, length
+    private Map<String, String> index = new TreeMap<>();
+
+    /**
+     * remove the bundles of a previous run
+     * @param outputDir : directory contains xml files for freqtals
+     * @throws IOException
+     */
+    public OutputBundle(String outputDir) throws IOException {
+        this.outputDir = outputDir;
+        File[] oldFiles = new File(outputDir).listFiles((dir, name) -> name.equals(INDEX_FILE)
+                || name.startsWith(BUNDLE_PREFIX) && name.endsWith(BUNDLE_SUFFIX));
+        if(oldFiles != null)
+            for (File file : oldFiles)
+                Files.delete(file.toPath());
+    }
+
+    /**
+     * get a bundle file which is not used by another thread
+     * @return : bundle file
+     * @throws IOException
+     */
+    public synchronized Part acquire() throws IOException {
+        if(!freeParts.isEmpty())
+            return freeParts.pop();
+        Part part = new Part(BUNDLE_PREFIX + parts.size() + BUNDLE_SUFFIX);
+        parts.add(part);
+        return part;
+    }
+
+    public synchronized void release(Part part){
+        freeParts.push(part);
+    }
+
+    private synchronized void addEntries(Map<String, String> entries){
+        index.putAll(entries);
+    }
+
+    /**
+     * close the bundle files and write the index
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (Part part : parts)
+            part.out.close();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(Paths.get(outputDir, INDEX_FILE).toFile()), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, String> entry : index.entrySet())
+                writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+        }
+    }
+
+    /**
+     * a bundle file
+     */
+    public class Part {
+        private String name;
+        private FileOutputStream file;
+        private OutputStream out;
+        private long position = 0;
+        private long entryStart = 0;
+        // start of the output files of the current input, and their entries which are not in the index yet
+        private long inputStart = 0;
+        private Map<String, String> inputEntries = new LinkedHashMap<>();
+
+        private Part(String name) throws IOException {
+            this.name = name;
+            this.file = new FileOutputStream(Paths.get(outputDir, name).toFile());
+            this.out = new BufferedOutputStream(file);
+        }
+
+        /**
+         * start an output file at the end of the bundle
+         * @param charset : charset of the output file
+         * @return : writer of the output file, closing it does not close the bundle
+         */
+        public Writer newEntry(Charset charset){
+            return new BufferedWriter(new OutputStreamWriter(newEntry(), charset));
+        }
+
+        /**
+         * start a binary output file at the end of the bundle
+         * @return : stream of the output file, closing it does not close the bundle
+         */
+        public OutputStream newEntry(){
+            entryStart = position;
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    ++position;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    position += len;
+                }
+            };
+        }
+
+        /**
+         * add the output file written since the last newEntry to the output files of the current input,
+         * after its writer is closed
+         * @param fileName : name of the output file
+         */
+        public void addEntry(String fileName){
+            inputEntries.put(fileName, name + "\t" + entryStart + "\t" + (position - entryStart));
+        }
+
+        /**
+         * add the output files of the current input to the index, once all of them are written
+         */
+        public void commit(){
+            addEntries(inputEntries);
+            inputEntries.clear();
+            inputStart = position;
+        }
+
+        /**
+         * remove the output files of the current input from the end of the bundle file, after one of them failed
+         * @throws IOException
+         */
+        public void rollback() throws IOException {
+            inputEntries.clear();
+            out.flush();
+            file.getChannel().truncate(inputStart);
+            position = inputStart;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package be.intimals.pythonConverter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Temporary file of values written and read at any position, through a few pages kept in memory.
+ * The least recently used page is written back to the file when another one is needed, so the heap
+ * used does not depend on the size of the file. Accesses close to each other, e.g. records in increasing
+ * order, stay in the same pages. An int, long or char must not cross the boundary of a page: the positions
+ * of the values are multiples of their size. The parts of the file never written read as 0.
+ */
+class PagedFile implements Closeable {
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int NB_PAGES = 8;
+
+    private final FileChannel channel;
+    private final ByteBuffer[] pages = new ByteBuffer[NB_PAGES];
+    private final long[] pageNumbers = new long[NB_PAGES];
+    private final long[] lastUses = new long[NB_PAGES];
+    private final boolean[] dirty = new boolean[NB_PAGES];
+    private long nbUses = 0;
+    // page of the last access
+    private int current = 0;
+
+    /**
+     * create an empty temporary file, deleted when it is closed
+     * @param prefix : prefix of the name of the file
+     */
+    PagedFile(String prefix) throws IOException {
+        Path file = Files.createTempFile(prefix, ".tmp");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        for(int i = 0; i < NB_PAGES; ++i){
+            pages[i] = ByteBuffer.allocate(PAGE_SIZE);
+            pageNumbers[i] = -1;
+        }
+    }
+
+    void putInt(long position, int value) throws IOException {
+        page(position, true).putInt((int) (position & (PAGE_SIZE - 1)), value);
+    }
+
+    int getInt(long position) throws IOException {
+        return page(position, false).getInt((int) (position & (PAGE_SIZE - 1)));
+    }
+
+    void putLong(long position, long value) throws IOException {
+        page(position, true).putLong((int) (position & (PAGE_SIZE - 1)), value);
+    }
+
+    long getLong(long position) throws IOException {
+        return page(position, false).getLong((int) (position & (PAGE_SIZE - 1)));
+    }
+
+    /**
+     * write chars from a position, 2 bytes each
+     */
+    void putChars(long position, char[] ch, int start, int length) throws IOException {
+        for(int i = 0; i < length; ++i, position += 2)
+            page(position, true).putChar((int) (position & (PAGE_SIZE - 1)), ch[start + i]);
+    }
+
+    /**
+     * @return : the chars written from a position
+     */
+    String getChars(long position, int length) throws IOException {
+        char[] chars = new char[length];
+        for(int i = 0; i < length; ++i, position += 2)
+            chars[i] = page(position, false).getChar((int) (position & (PAGE_SIZE - 1)));
+        return new String(chars);
+    }
+
+    /**
+     * @param position : position in the file
+     * @param write : the page will be changed
+     * @return : the page containing the position
+     */
+    private ByteBuffer page(long position, boolean write) throws IOException {
+        long number = position >>> PAGE_BITS;
+        if(pageNumbers[current] != number){
+            current = findPage(number);
+            lastUses[current] = ++nbUses;
+        }
+        if(write)
+            dirty[current] = true;
+        return pages[current];
+    }
+
+    /**
+     * @return : index of a page in memory, read from the file in place of the least recently used one if needed
+     */
+    private int findPage(long number) throws IOException {
+        int oldest = 0;
+        for(int i = 0; i < NB_PAGES; ++i){
+            if(pageNumbers[i] == number)
+                return i;
+            if(lastUses[i] < lastUses[oldest])
+                oldest = i;
+        }
+        ByteBuffer page = pages[oldest];
+        if(dirty[oldest]){
+            page.clear();
+            long offset = pageNumbers[oldest] << PAGE_BITS;
+            while(page.hasRemaining())
+                channel.write(page, offset + page.position());
+            dirty[oldest] = false;
+        }
+        page.clear();
+        long offset = number << PAGE_BITS;
+        int nbRead = 0;
+        while(page.hasRemaining() && nbRead >= 0)
+            nbRead = channel.read(page, offset + page.position());
+        // beyond the end of the file
+        while(page.hasRemaining())
+            page.put((byte) 0);
+        pageNumbers[oldest] = number;
+        return oldest;
+    }
+
+    /**
+     * close and delete the file
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -2,32 +2,34 @@ package be.intimals.pythonConverter;
 
 import org.xml.sax.SAXException;
 
-import org.w3c.dom.Document;
 import javax.xml.parsers.*;
 import java.io.IOException;
 import java.io.InputStream;
 
 public class PositionalXMLReader {
-    final static String LINE_NUMBER_KEY_NAME = "lineNumber";
-    final static String COL_NUMBER_KEY_NAME = "columnNumber";
+    // parser of each thread, created once and reset after each document
+    private static final ThreadLocal<SAXParser> parsers = ThreadLocal.withInitial(() -> {
+        try {
+            return SAXParserFactory.newInstance().newSAXParser();
+        } catch (final ParserConfigurationException | SAXException e) {
+            throw new RuntimeException("Can't create SAX parser.", e);
+        }
+    });
 
-    public static Document readXML(final InputStream is)
+    /**
+     * read a document in a CompactTree instead of a DOM
+     * @param is : input xml
+     * @return : tree of the document with the line numbers and text spans of its elements
+     */
+    public static CompactTree readTree(final InputStream is)
             throws IOException, SAXException {
-        final Document doc;
-        SAXParser parser;
+        SAXParser parser = parsers.get();
+        CompactTreeHandler handler = new CompactTreeHandler();
         try {
-            final SAXParserFactory factory = SAXParserFactory.newInstance();
-            parser = factory.newSAXParser();
-            final DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory
-                    .newInstance();
-            final DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-            doc = docBuilder.newDocument();
-        } catch (final ParserConfigurationException e) {
-            throw new RuntimeException("Can't create SAX parser / DOM builder.", e);
+            parser.parse(is, handler);
+        } finally {
+            parser.reset();
         }
-        LineNumberHandler handler = new LineNumberHandler(doc);
-        parser.parse(is, handler);
-
-        return doc;
+        return handler.getTree();
     }
 }
@@ -0,0 +1,414 @@
+package be.intimals.pythonConverter;
+
+import java.util.*;
+
+import static be.intimals.pythonConverter.Utils.*;
+
+/**
+ * find line and column numbers of the nodes of one Python file.
+ * The first time a name is searched in a line, the line is split into words (runs of letters, digits and _)
+ * and the positions of each word are kept, so the n-th occurrence of a name is found without searching the
+ * line again. The positions are the ones the substring search of the names accepted, so the columns do not
+ * change: the whole words, the start of the first word of the line when a digit follows the name, and the end
+ * of the last word of the line. Operators and the other texts are searched in the line.
+ */
+public class PyColumnFinder {
+    private static final Set<String> combinedOperators =
+            new HashSet<>(Arrays.asList("+=","-=", "*=", "/=", ">=", "<=", "%", "==","!=",">","<","//"));
+    private static final Set<String> operators = new HashSet<>(Arrays.asList("+","-","*","/","**"));
+    private static final int[] NO_POSITIONS = new int[0];
+    // an operator at the end of a line, the character after it cannot be checked
+    private static final int UNCHECKED = -2;
+    // the first position of a text has not been searched yet
+    private static final int UNKNOWN = -2;
+
+    private PyLineIndex pyFileContent;
+    private long nbLookups = 0;
+    private long nbFallbacks = 0;
+    // texts of each line, indexed by line number
+    private final List<LineTexts> linesTexts = new ArrayList<>();
+    // the lines before this one have been released
+    private int firstKeptLine = 0;
+
+    public PyColumnFinder(PyLineIndex pyFileContent){
+        this.pyFileContent = pyFileContent;
+    }
+
+    /**
+     * occurrences of the words and of the collected texts of a line
+     */
+    private static class LineTexts {
+        final Map<String, Occurrences> texts = new HashMap<>();
+        // the words of the line have been added
+        boolean tokenized = false;
+
+        Occurrences get(String text){
+            Occurrences occurrences = texts.get(text);
+            if(occurrences == null){
+                occurrences = new Occurrences();
+                texts.put(text, occurrences);
+            }
+            return occurrences;
+        }
+    }
+
+    /**
+     * occurrences of a text in a line: the number of times it has been collected,
+     * and its positions in the line, or a cursor on the positions of an operator
+     */
+    private static class Occurrences {
+        // number of times this text has been collected
+        int nbCollected = 0;
+        // positions of the text, in increasing order
+        int[] positions = NO_POSITIONS;
+        int nbPositions = 0;
+        // the positions are known
+        boolean complete = false;
+        // first position of the text as a substring of the line
+        int first = UNKNOWN;
+        // the empty text stays at the end of the line instead of leaving it
+        boolean endless = false;
+        // position of an operator reached after nbSteps occurrences, the next one is at the end of the line
+        int cursor;
+        int nbSteps = 0;
+        boolean failed = false;
+
+        void add(int position){
+            if(nbPositions == positions.length)
+                positions = Arrays.copyOf(positions, Math.max(2, nbPositions * 2));
+            positions[nbPositions++] = position;
+        }
+
+        /**
+         * @param line : line of the text
+         * @param text : text
+         * @return : column of the occurrence after the collected ones
+         */
+        int getColumn(CharSequence line, String text){
+            if(nbCollected == 0 && nbPositions > 0)
+                return positions[0] + 1;
+            if(first == UNKNOWN)
+                first = indexOf(line, text, 0);
+            if(first < 0)
+                return 1;
+            if(nbCollected == 0)
+                return 0;
+            // a cursor starts from the first substring and moves nbCollected times to the next position,
+            // after the last one it is out of the line (column 0), then it starts again from the first one
+            int nbSteps = nbPositions > 0 && first == positions[0] ? nbCollected : nbCollected - 1;
+            if(endless)
+                return positions[Math.min(nbSteps, nbPositions - 1)] + 1;
+            int position = nbSteps % (nbPositions + 1);
+            return position == nbPositions ? 0 : positions[position] + 1;
+        }
+    }
+
+    /**
+     * collect all variables of line of code
+     * @param lineNr : line number of the node
+     * @param identifier : identifier
+     */
+    public void collectLinesVariables(int lineNr, String identifier) {
+        //count this variable name in this line number
+        ++getLineTexts(lineNr).get(identifier).nbCollected;
+    }
+
+    /**
+     * @param lineNr : line number
+     * @return : texts of the line
+     */
+    private LineTexts getLineTexts(int lineNr){
+        while(linesTexts.size() <= lineNr)
+            linesTexts.add(null);
+        LineTexts lineTexts = linesTexts.get(lineNr);
+        if(lineTexts == null){
+            lineTexts = new LineTexts();
+            linesTexts.set(lineNr, lineTexts);
+        }
+        return lineTexts;
+    }
+
+    /**
+     * forget the texts of the lines before a line, when the nodes are given in the order of their lines
+     * @param lineNr : line number, the lines before it are not searched and collected again
+     */
+    public void releaseLinesBefore(int lineNr){
+        int end = Math.min(lineNr, linesTexts.size());
+        for(; firstKeptLine < end; ++firstKeptLine)
+            linesTexts.set(firstKeptLine, null);
+    }
+
+    /**
+     * @return : number of texts searched in the python file
+     */
+    public long getNbLookups(){
+        return nbLookups;
+    }
+
+    /**
+     * @return : number of operators found at the end of a line, which get the column of their first occurrence
+     */
+    public long getNbFallbacks(){
+        return nbFallbacks;
+    }
+
+    /**
+     * find line and column numbers of a text in input files
+     * @param lineNr : line number of the node in the xml file
+     * @param identifier : string
+     * @return : LineNr, EndLineNr, ColNr, EndColNr
+     */
+    public int[] findLineColNumbers(int lineNr, String identifier){
+        int[] results = new int[4];
+
+        //line number of this node in the xml file
+        results[0] = lineNr;
+
+        results[1] = lineNr + countLines(identifier) - 1;
+
+        //get column number of this node from Python file
+        findPyColumnNr(lineNr, identifier, results);
+
+        return results;
+    }
+
+    /**
+     * find line and column numbers of a text which is only known by its number of lines,
+     * the text itself is needed only if it has a single line
+     * @param lineNr : line number of the node in the xml file
+     * @param nbLines : number of lines of the text
+     * @param identifier : the text if it has a single line, otherwise null
+     * @return : LineNr, EndLineNr, ColNr, EndColNr
+     */
+    public int[] findLineColNumbers(int lineNr, int nbLines, String identifier){
+        if(nbLines == 1)
+            return findLineColNumbers(lineNr, identifier);
+
+        //a text of several lines is never found in one line of the python file
+        CharSequence line = pyFileContent.getLine(lineNr);
+        return new int[]{lineNr, lineNr + nbLines - 1, 1, line.length()};
+    }
+
+    /**
+     * find column number of a text from the input python file
+     * @param lineNr : line number
+     * @param identifier : identifier
+     * @param results : the first and last position of the identifier in line lineNr are set at index 2 and 3
+     */
+    private void findPyColumnNr(int lineNr, String identifier, int[] results){
+        ++nbLookups;
+        //get a line in python file
+        CharSequence line = pyFileContent.getLine(lineNr);
+        int col;
+        if(combinedOperators.contains(identifier.trim())){
+            col = indexOf(line, identifier, 0) + 1;
+            if(col == 0)
+                col = 1;
+        }else if(operators.contains(identifier)){
+            col = findOperatorColNr(lineNr, line, identifier);
+        }else if(isWord(identifier)){
+            col = getWordOccurrences(lineNr, line, identifier).getColumn(line, identifier);
+        }else{
+            col = findTextColNr(lineNr, line, identifier);
+        }
+        //calculate end column number
+        int endColNr;
+        if(countLines(identifier) > 1){
+            endColNr = line.length(); // =col
+        }else{
+            endColNr = col + identifier.trim().length()-1;
+        }
+
+        results[2] = col;
+        results[3] = endColNr;
+    }
+
+    /**
+     * @return : column of the occurrence of an operator after the collected ones, the operators in +=, -=...
+     * and in ** are skipped. 1 if the operator is not in the line, 0 if there is no such occurrence
+     */
+    private int findOperatorColNr(int lineNr, CharSequence line, String operator){
+        int first = indexOf(line, operator, 0);
+        if(first < 0)
+            return 1;
+        Occurrences occurrences = getCollected(lineNr, operator);
+        if(occurrences == null){
+            int index = nextOperator(line, operator, first - 1);
+            if(index == UNCHECKED){
+                ++nbFallbacks;
+                return first + 1;
+            }
+            return index + 1;
+        }
+        // move the cursor to the next occurrence of each collected operator
+        if(!occurrences.complete){
+            occurrences.cursor = first;
+            occurrences.complete = true;
+        }
+        while(occurrences.nbSteps < occurrences.nbCollected && !occurrences.failed){
+            int index = nextOperator(line, operator, occurrences.cursor);
+            if(index == UNCHECKED){
+                ++nbFallbacks;
+                occurrences.failed = true;
+            }else{
+                occurrences.cursor = index;
+                ++occurrences.nbSteps;
+            }
+        }
+        return occurrences.failed ? first + 1 : occurrences.cursor + 1;
+    }
+
+    /**
+     * @return : index of the next occurrence of an operator after index which is not in +=, -=... or in **,
+     * -1 if there is none, UNCHECKED if it is at the end of the line
+     */
+    private static int nextOperator(CharSequence line, String operator, int index){
+        int length = line.length();
+        index = indexOf(line, operator, index + 1);
+        while(index >= 0 && index + 1 < length && line.charAt(index + 1) == '=')
+            index = indexOf(line, operator, index + 1);
+        if(operator.equals("*")){
+            while(index >= 0 && index + 1 < length && line.charAt(index + 1) == '*')
+                index = indexOf(line, operator, index + 2);
+        }
+        return index + 1 == length ? UNCHECKED : index;
+    }
+
+    /**
+     * @return : occurrences of a text collected in a line, null if it has not been collected
+     */
+    private Occurrences getCollected(int lineNr, String text){
+        LineTexts lineTexts = lineNr < linesTexts.size() ? linesTexts.get(lineNr) : null;
+        return lineTexts == null ? null : lineTexts.texts.get(text);
+    }
+
+    /**
+     * @return : occurrences of a word in a line, with all their positions
+     */
+    private Occurrences getWordOccurrences(int lineNr, CharSequence line, String word){
+        LineTexts lineTexts = getLineTexts(lineNr);
+        if(!lineTexts.tokenized){
+            addWords(lineTexts, line);
+            lineTexts.tokenized = true;
+        }
+        Occurrences occurrences = lineTexts.get(word);
+        if(!occurrences.complete){
+            int length = line.length();
+            int wordLength = word.length();
+            // the start of the first word, when a digit follows
+            if(wordLength < length && startsWith(line, word, 0) && Character.isDigit(line.charAt(wordLength))){
+                occurrences.add(0);
+                System.arraycopy(occurrences.positions, 0, occurrences.positions, 1, occurrences.nbPositions - 1);
+                occurrences.positions[0] = 0;
+            }
+            // the end of the last word
+            int end = length - wordLength;
+            if(end > 0 && startsWith(line, word, end)
+                    && (occurrences.nbPositions == 0 || occurrences.positions[occurrences.nbPositions - 1] != end))
+                occurrences.add(end);
+            occurrences.complete = true;
+        }
+        return occurrences;
+    }
+
+    /**
+     * add the positions of the words of a line
+     */
+    private static void addWords(LineTexts lineTexts, CharSequence line){
+        int length = line.length();
+        // start of the current word, -1 between words
+        int start = -1;
+        for(int i = 0; i <= length; ++i){
+            boolean isWordChar = i < length && isWordChar(line.charAt(i));
+            if(isWordChar && start < 0){
+                start = i;
+            }else if(!isWordChar && start >= 0){
+                lineTexts.get(line.subSequence(start, i).toString()).add(start);
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * @return : column of a text which is not a word, its occurrences inside words are ignored
+     */
+    private int findTextColNr(int lineNr, CharSequence line, String text){
+        Occurrences occurrences = getCollected(lineNr, text);
+        if(occurrences == null){
+            // not collected: its first occurrence
+            int index = indexOf(line, text, 0);
+            if(index < 0)
+                return 1;
+            while(index >= 0 && isInWord(line, text, index))
+                index = indexOf(line, text, index + 1);
+            return index + 1;
+        }
+        if(!occurrences.complete){
+            occurrences.first = indexOf(line, text, 0);
+            // the empty text is found at each index, up to the end of the line
+            int length = line.length();
+            for(int index = occurrences.first; index >= 0; index = index < length ? indexOf(line, text, index + 1) : -1){
+                if(!isInWord(line, text, index))
+                    occurrences.add(index);
+            }
+            occurrences.endless = text.isEmpty();
+            occurrences.complete = true;
+        }
+        return occurrences.getColumn(line, text);
+    }
+
+    private static boolean isWord(String text){
+        if(text.isEmpty())
+            return false;
+        for(int i = 0; i < text.length(); ++i){
+            if(!isWordChar(text.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isWordChar(char c){
+        return Character.isAlphabetic(c) || Character.isDigit(c) || c == '_';
+    }
+
+    private static boolean startsWith(CharSequence line, String text, int index){
+        for(int i = 0; i < text.length(); ++i){
+            if(line.charAt(index + i) != text.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * check identifier is in a substring or not
+     * @param inputString : input string
+     * @param identifier : identifier
+     * @param index : index of identifier in the string
+     * @return : true if identifier is included in a substring
+     */
+    private static boolean isInWord(CharSequence inputString, String identifier, int index){
+        // identifier at the first line
+        if(index == 0 && identifier.length() < inputString.length()){
+            // last char is an alphabetic
+            boolean lastChar = Character.isAlphabetic(inputString.charAt(index + identifier.length()));
+            // last char is an _
+            boolean lastCharDash = inputString.charAt(index + identifier.length()) == '_';
+            return  lastChar || lastCharDash;
+        }
+        if(index > 0 && index + identifier.length() < inputString.length()) {
+            // first char is an alphabetic
+            boolean firstChar = Character.isAlphabetic(inputString.charAt(index - 1)) ||
+                    Character.isDigit(inputString.charAt(index - 1));
+            // last char is an alphabetic
+            boolean lastChar = Character.isAlphabetic(inputString.charAt(index + identifier.length())) ||
+                    Character.isDigit(inputString.charAt(index + identifier.length()));
+            // first char is an _
+            boolean firstCharDash = inputString.charAt(index -1) == '_';
+            // last char is an _
+            boolean lastCharDash = inputString.charAt(index + identifier.length()) == '_';
+
+            return  firstChar || lastChar || firstCharDash || lastCharDash;
+        }else
+            return false;
+    }
+}
@@ -0,0 +1,112 @@
+package be.intimals.pythonConverter;
+
+import org.xml.sax.SAXException;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Convert a Python XML in the calling thread and give the converted tree to a NodeHandler,
+ * without writing any file, e.g. to mine the trees in memory:
+ *
+ *     new PyConverter().convert("sample1.xml", "sample1.py", handler);
+ *
+ * or, without pyRegurgitator, new PyConverter().convertSource("sample1.py", handler);
+ *
+ * The tree is the one written to the XML output by TransformPyAST.
+ * An XML is transformed as a stream by StreamTransformPyAST, like with -stream, so the converted tree is not kept
+ * in memory: the XML is read twice, an XML given as an input stream is first copied to a temporary file, and
+ * the handler may have received the start of the tree when an error stops the conversion.
+ * A python file parsed by PySourceParser is a tree in memory, which is given to the handler once transformed.
+ */
+public class PyConverter {
+
+    /**
+     * convert a file exported by pyRegurgitator
+     * @param xmlFile : xml file exported by pyRegurgitator
+     * @param pyFile : its python file
+     * @param handler : handler of the converted tree
+     * @throws IOException
+     * @throws SAXException : if the xml file is not valid
+     */
+    public void convert(String xmlFile, String pyFile, NodeHandler handler) throws IOException, SAXException {
+        PyColumnFinder columnFinder;
+        try (InputStream py = Utils.openInputFile(pyFile)) {
+            columnFinder = new PyColumnFinder(new PyLineIndex(py.readAllBytes()));
+        }
+        convert(xmlFile, pyFile, columnFinder, handler);
+    }
+
+    /**
+     * convert the content of a file exported by pyRegurgitator
+     * @param xml : UTF-8 content of the xml, compressed with gzip or not, not closed
+     * @param py : UTF-8 content of the python file, compressed with gzip or not, not closed
+     * @param pyFileName : name of the python file, given in the SourceFile node
+     * @param handler : handler of the converted tree
+     * @throws IOException
+     * @throws SAXException : if the xml is not valid
+     */
+    public void convert(InputStream xml, InputStream py, String pyFileName, NodeHandler handler)
+            throws IOException, SAXException {
+        PyColumnFinder columnFinder = new PyColumnFinder(new PyLineIndex(Utils.decompress(py).readAllBytes()));
+        // the xml is read twice
+        Path xmlFile = Files.createTempFile("pyConverter", ".xml");
+        try {
+            Files.copy(Utils.decompress(xml), xmlFile, StandardCopyOption.REPLACE_EXISTING);
+            convert(xmlFile.toString(), pyFileName, columnFinder, handler);
+        }finally {
+            Files.delete(xmlFile);
+        }
+    }
+
+    /**
+     * transform an xml file as a stream
+     * @param xmlFile : xml file exported by pyRegurgitator, compressed with gzip or not
+     * @param pyFileName : name of the python file, given in the SourceFile node
+     * @param columnFinder : column finder of the python file
+     * @param handler : handler of the converted tree
+     */
+    private void convert(String xmlFile, String pyFileName, PyColumnFinder columnFinder, NodeHandler handler)
+            throws IOException, SAXException {
+        try {
+            new StreamTransformPyAST(columnFinder, NodeRules.DEFAULT).transform(xmlFile, pyFileName,
+                    new TreeToNodeHandler(handler));
+        }catch (XMLStreamException e){
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * convert a python file parsed by PySourceParser
+     * @param pyFile : python file
+     * @param handler : handler of the converted tree
+     * @throws IOException
+     * @throws IllegalArgumentException : if the python file cannot be parsed
+     */
+    public void convertSource(String pyFile, NodeHandler handler) throws IOException {
+        try (InputStream py = Utils.openInputFile(pyFile)) {
+            convertSource(py, pyFile, handler);
+        }
+    }
+
+    /**
+     * convert the content of a python file parsed by PySourceParser
+     * @param py : UTF-8 content of the python file, compressed with gzip or not, not closed
+     * @param pyFileName : name of the python file, given in the SourceFile node
+     * @param handler : handler of the converted tree
+     * @throws IOException
+     * @throws IllegalArgumentException : if the python file cannot be parsed
+     */
+    public void convertSource(InputStream py, String pyFileName, NodeHandler handler) throws IOException {
+        byte[] bytes = Utils.decompress(py).readAllBytes();
+        PyColumnFinder columnFinder = new PyColumnFinder(new PyLineIndex(bytes));
+        CompactTree tree = PySourceParser.parse(new String(bytes, StandardCharsets.UTF_8), pyFileName);
+        new TransformPyAST().transformTree(tree, columnFinder);
+        tree.write(handler);
+    }
+}
@@ -0,0 +1,71 @@
+package be.intimals.pythonConverter;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Lines of a Python source file.
+ * The file is decoded once into a char buffer and the offsets of the lines are indexed,
+ * a line is returned as a view on the buffer. Lines end with \n, \r or \r\n like in BufferedReader.
+ */
+public class PyLineIndex {
+    private char[] content;
+    // line i (from 0) is content[lineStarts[i], lineEnds[i])
+    private int[] lineStarts;
+    private int[] lineEnds;
+    private int nbLines;
+
+    /**
+     * index the lines of a file content
+     * @param bytes : UTF-8 encoded content
+     */
+    public PyLineIndex(byte[] bytes){
+        CharBuffer chars = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes));
+        content = chars.array();
+        int length = chars.limit();
+        lineStarts = new int[16];
+        lineEnds = new int[16];
+        nbLines = 0;
+        int start = 0;
+        int i = 0;
+        while(i < length){
+            char c = content[i];
+            if(c == '\n' || c == '\r'){
+                addLine(start, i);
+                if(c == '\r' && i + 1 < length && content[i + 1] == '\n')
+                    ++i;
+                start = i + 1;
+            }
+            ++i;
+        }
+        if(start < length)
+            addLine(start, length);
+    }
+
+    private void addLine(int start, int end){
+        if(nbLines == lineStarts.length){
+            lineStarts = Arrays.copyOf(lineStarts, nbLines * 2);
+            lineEnds = Arrays.copyOf(lineEnds, nbLines * 2);
+        }
+        lineStarts[nbLines] = start;
+        lineEnds[nbLines] = end;
+        ++nbLines;
+    }
+
+    /**
+     * @param lineNr : line number, from 1
+     * @return : the line without its end of line characters
+     */
+    public CharSequence getLine(int lineNr){
+        if(lineNr < 1 || lineNr > nbLines)
+            throw new IndexOutOfBoundsException("Line: " + lineNr + ", Lines: " + nbLines);
+        int start = lineStarts[lineNr - 1];
+        return CharBuffer.wrap(content, start, lineEnds[lineNr - 1] - start);
+    }
+
+    public int size(){
+        return nbLines;
+    }
+}
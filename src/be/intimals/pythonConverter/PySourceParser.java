@@ -0,0 +1,1339 @@
+package be.intimals.pythonConverter;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.LocatorImpl;
+
+import java.util.*;
+
+import static be.intimals.pythonConverter.PyTokenizer.*;
+
+/**
+ * Parse a Python 3 source in the JVM and build the tree which PositionalXMLReader reads from the XML of pyRegurgitator,
+ * so that a Python file is converted without exporting it first.
+ *
+ * As in the XML of pyRegurgitator, the elements are the AST nodes (ClassDef, If, Name...) and their fields
+ * (body, test, targets...), and the text of the elements is the source code itself: the text content of the
+ * Module is the whole file. An element starts at its first token and ends at its last one, without the
+ * parentheses around it, and the code between two elements belongs to their parent, except:
+ * - a body starts after the colon, so it contains the comment and the indentation before its first statement
+ * - the targets of an assignment contain the equal signs
+ * - the arguments of a function contain the parentheses and the colon
+ * - an operator element (Add, cmpop...) contains the white space around the operator
+ * - an except handler starts after the last statement before it
+ * The tree has the line numbers the XML would have, the columns are still found by PyColumnFinder.
+ *
+ * Most of Python 3 is parsed. The shapes of the nodes which are not in the XML files we have
+ * (Dict, BoolOp, comprehensions, imports...) follow the same rules.
+ */
+public class PySourceParser {
+    private static final String[] NO_ATTRIBUTES = new String[0];
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("False", "None", "True", "and", "as",
+            "assert", "async", "await", "break", "class", "continue", "def", "del", "elif", "else", "except", "finally",
+            "for", "from", "global", "if", "import", "in", "is", "lambda", "nonlocal", "not", "or", "pass", "raise",
+            "return", "try", "while", "with", "yield"));
+    private static final String[][] AUG_OPERATORS = {{"+=", "Add"}, {"-=", "Sub"}, {"*=", "Mult"}, {"@=", "MatMult"},
+            {"/=", "Div"}, {"%=", "Mod"}, {"&=", "BitAnd"}, {"|=", "BitOr"}, {"^=", "BitXor"}, {"<<=", "LShift"},
+            {">>=", "RShift"}, {"**=", "Pow"}, {"//=", "FloorDiv"}};
+    // binary operators by increasing priority
+    private static final String[][][] BIN_OPERATORS = {{{"|", "BitOr"}}, {{"^", "BitXor"}}, {{"&", "BitAnd"}},
+            {{"<<", "LShift"}, {">>", "RShift"}}, {{"+", "Add"}, {"-", "Sub"}},
+            {{"*", "Mult"}, {"@", "MatMult"}, {"/", "Div"}, {"//", "FloorDiv"}, {"%", "Mod"}}};
+    private static final String[] COMPARISONS = {"<", ">", "==", ">=", "<=", "!=", "in", "not", "is"};
+
+    /**
+     * An element of the tree, its span is the code between its start and end tags
+     */
+    private static class Element {
+        final String tag;
+        String[] attributes = NO_ATTRIBUTES;
+        List<Element> children = Collections.emptyList();
+        int open;
+        int close;
+        // span with the parentheses around the element
+        int outerOpen;
+        int outerClose;
+
+        Element(String tag, int open, int close){
+            this.tag = tag;
+            setSpan(open, close);
+        }
+
+        void setSpan(int open, int close){
+            this.open = outerOpen = open;
+            this.close = outerClose = close;
+        }
+
+        Element add(Element child){
+            if(children.isEmpty())
+                children = new ArrayList<>(2);
+            children.add(child);
+            return this;
+        }
+
+        Element attribute(String name, String value){
+            String[] extended = Arrays.copyOf(attributes, attributes.length + 2);
+            extended[attributes.length] = name;
+            extended[attributes.length + 1] = value;
+            attributes = extended;
+            return this;
+        }
+
+        String getAttribute(String name){
+            for(int i = 0; i < attributes.length; i += 2)
+                if(attributes[i].equals(name))
+                    return attributes[i + 1];
+            return null;
+        }
+
+        void setAttribute(String name, String value){
+            for(int i = 0; i < attributes.length; i += 2)
+                if(attributes[i].equals(name))
+                    attributes[i + 1] = value;
+        }
+    }
+
+    private String source;
+    private PyTokenizer tokens;
+    // current token
+    private int p = 0;
+
+    private PySourceParser(String source){
+        // the XML parser reads the ends of lines as \n
+        this.source = source.replace("\r\n", "\n").replace('\r', '\n');
+        if(this.source.startsWith("\uFEFF"))
+            this.source = this.source.substring(1);
+    }
+
+    /**
+     * parse a Python file
+     * @param source : Python code
+     * @param pyFileName : name of the python file, given in the SourceFile node
+     * @return : tree of the code with the line numbers and text spans of its elements, as read by PositionalXMLReader
+     * @throws IllegalArgumentException : if the code is not valid, with its line
+     */
+    public static CompactTree parse(String source, String pyFileName){
+        PySourceParser parser = new PySourceParser(source);
+        parser.tokens = new PyTokenizer(parser.source);
+        Element module = parser.parseModule();
+        try {
+            return parser.write(module, pyFileName);
+        }catch (SAXException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * give the events of the SourceFile element and of the module to a CompactTreeHandler
+     */
+    private CompactTree write(Element module, String pyFileName) throws SAXException {
+        CompactTreeHandler handler = new CompactTreeHandler();
+        LocatorImpl locator = new LocatorImpl();
+        locator.setLineNumber(1);
+        handler.setDocumentLocator(locator);
+        AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute("", "Language", "Language", "CDATA", "Python");
+        attributes.addAttribute("", "FullName", "FullName", "CDATA", pyFileName);
+        handler.startElement("", "SourceFile", "SourceFile", attributes);
+
+        // walk the elements in document order, the code between the tags is their text
+        int cursor = 0;
+        int line = 1;
+        Deque<Element> elements = new ArrayDeque<>();
+        Deque<Integer> nextChild = new ArrayDeque<>();
+        Element element = module;
+        while(element != null){
+            if(element.open < cursor || element.close < element.open)
+                throw new IllegalStateException("overlapping elements at line " + line);
+            line = writeText(handler, cursor, element.open, line);
+            cursor = element.open;
+            locator.setLineNumber(line);
+            attributes.clear();
+            for(int i = 0; i < element.attributes.length; i += 2)
+                attributes.addAttribute("", element.attributes[i], element.attributes[i], "CDATA", element.attributes[i + 1]);
+            handler.startElement("", element.tag, element.tag, attributes);
+            elements.push(element);
+            nextChild.push(0);
+            element = null;
+            while(element == null && !elements.isEmpty()){
+                Element parent = elements.peek();
+                int child = nextChild.pop();
+                if(child < parent.children.size()){
+                    nextChild.push(child + 1);
+                    element = parent.children.get(child);
+                }else{
+                    line = writeText(handler, cursor, parent.close, line);
+                    cursor = Math.max(cursor, parent.close);
+                    handler.endElement("", parent.tag, parent.tag);
+                    elements.pop();
+                }
+            }
+        }
+        // the end of the SourceFile element is on a new line
+        handler.characters(new char[]{'\n'}, 0, 1);
+        handler.endElement("", "SourceFile", "SourceFile");
+        return handler.getTree();
+    }
+
+    /**
+     * @return : line number after the text
+     */
+    private int writeText(CompactTreeHandler handler, int from, int to, int line) throws SAXException {
+        if(to <= from)
+            return line;
+        char[] text = source.substring(from, to).toCharArray();
+        handler.characters(text, 0, text.length);
+        for(char c : text)
+            if(c == '\n')
+                ++line;
+        return line;
+    }
+
+    //-------------------------------------------------------------------------------------------- statements
+
+    private Element parseModule(){
+        Element module = new Element("Module", 0, source.length());
+        while(type() != END){
+            if(type() == INDENT)
+                throw error("unexpected indent");
+            parseStatement(module);
+        }
+        return module;
+    }
+
+    /**
+     * parse a statement, or the simple statements of a line, and add them to a parent
+     */
+    private void parseStatement(Element parent){
+        if(is("if")){
+            parent.add(parseIf());
+        }else if(is("while")){
+            parent.add(parseWhile());
+        }else if(is("for")){
+            parent.add(parseFor(p));
+        }else if(is("try")){
+            parent.add(parseTry());
+        }else if(is("with")){
+            parent.add(parseWith(p));
+        }else if(is("def")){
+            parent.add(parseFunctionDef(p, null));
+        }else if(is("class")){
+            parent.add(parseClassDef(p, null));
+        }else if(is("@")){
+            parent.add(parseDecorated());
+        }else if(is("async") && (isNext("def") || isNext("for") || isNext("with"))){
+            int first = p++;
+            if(is("def"))
+                parent.add(parseFunctionDef(first, null));
+            else if(is("for"))
+                parent.add(parseFor(first));
+            else
+                parent.add(parseWith(first));
+        }else{
+            parseSimpleStatements(parent);
+        }
+    }
+
+    private void parseSimpleStatements(Element parent){
+        while(true){
+            parent.add(parseSmallStatement());
+            if(!is(";"))
+                break;
+            ++p;
+            if(type() == NEWLINE)
+                break;
+        }
+        expect(NEWLINE);
+    }
+
+    /**
+     * parse the block after a colon
+     * @param parent : element receiving the statements of the block
+     */
+    private void parseBlock(Element parent){
+        if(type() == NEWLINE){
+            ++p;
+            expect(INDENT);
+            while(type() != DEDENT && type() != END)
+                parseStatement(parent);
+            expect(DEDENT);
+        }else{
+            parseSimpleStatements(parent);
+        }
+    }
+
+    /**
+     * parse ": block" as a body element starting after the colon
+     */
+    private Element parseBody(){
+        expectOp(":");
+        Element body = new Element("body", end(p - 1), -1);
+        parseBlock(body);
+        body.setSpan(body.open, last(body).outerClose);
+        return body;
+    }
+
+    /**
+     * parse "else: block" or "finally: block" as an element starting at the keyword
+     */
+    private Element parseClause(String tag){
+        Element clause = new Element(tag, start(p), -1);
+        ++p;
+        expectOp(":");
+        parseBlock(clause);
+        clause.setSpan(clause.open, last(clause).outerClose);
+        return clause;
+    }
+
+    private Element parseIf(){
+        Element node = new Element("If", start(p), -1);
+        ++p;
+        node.add(wrap("test", parseNamedExpression()));
+        node.add(parseBody());
+        if(is("elif")){
+            Element elif = parseIf();
+            node.add(new Element("orelse", elif.open, elif.close).add(elif));
+        }else if(is("else")){
+            node.add(parseClause("orelse"));
+        }
+        return close(node);
+    }
+
+    private Element parseWhile(){
+        Element node = new Element("While", start(p), -1);
+        ++p;
+        node.add(wrap("test", parseNamedExpression()));
+        node.add(parseBody());
+        if(is("else"))
+            node.add(parseClause("orelse"));
+        return close(node);
+    }
+
+    private Element parseFor(int first){
+        Element node = new Element(is(first, "async") ? "AsyncFor" : "For", start(first), -1);
+        p = first + (is(first, "async") ? 2 : 1);
+        node.add(wrap("target", setContext(parseExpressionList(true), "Store")));
+        expectKeyword("in");
+        node.add(wrap("iter", parseTestList()));
+        node.add(parseBody());
+        if(is("else"))
+            node.add(parseClause("orelse"));
+        return close(node);
+    }
+
+    private Element parseTry(){
+        Element node = new Element("Try", start(p), -1);
+        ++p;
+        node.add(parseBody());
+        Element handlers = null;
+        while(is("except")){
+            Element handler = new Element("ExceptHandler", previousEnd(p), -1);
+            ++p;
+            if(!is(":")){
+                handler.add(wrap("type", parseTest()));
+                if(is("as")){
+                    ++p;
+                    handler.add(parseIdentifier("name"));
+                }
+            }
+            handler.add(parseBody());
+            close(handler);
+            if(handlers == null)
+                handlers = new Element("handlers", handler.open, -1);
+            handlers.add(handler);
+        }
+        if(handlers != null)
+            node.add(close(handlers));
+        if(is("else"))
+            node.add(parseClause("orelse"));
+        if(is("finally"))
+            node.add(parseClause("finalbody"));
+        if(handlers == null && node.children.size() == 1)
+            throw error("expected except or finally");
+        return close(node);
+    }
+
+    private Element parseWith(int first){
+        Element node = new Element(is(first, "async") ? "AsyncWith" : "With", start(first), -1);
+        p = first + (is(first, "async") ? 2 : 1);
+        Element items = new Element("items", start(p), -1);
+        do {
+            if(!items.children.isEmpty())
+                ++p;
+            Element item = new Element("withitem", -1, -1);
+            Element expression = parseTest();
+            item.add(expression);
+            if(is("as")){
+                ++p;
+                item.add(setContext(parseExpression(), "Store"));
+            }
+            items.add(close(item));
+        } while(is(","));
+        node.add(close(items));
+        node.add(parseBody());
+        return close(node);
+    }
+
+    private Element parseDecorated(){
+        int first = p;
+        Element decorators = new Element("decorator_list", start(p), -1);
+        while(is("@")){
+            ++p;
+            decorators.add(parseNamedExpression());
+            expect(NEWLINE);
+        }
+        close(decorators);
+        if(is("async") && isNext("def"))
+            ++p;
+        if(is("def"))
+            return parseFunctionDef(first, decorators);
+        if(is("class"))
+            return parseClassDef(first, decorators);
+        throw error("expected def or class after a decorator");
+    }
+
+    private Element parseFunctionDef(int first, Element decorators){
+        boolean async = is(first, "async") || p > 0 && is(p - 1, "async");
+        Element node = new Element(async ? "AsyncFunctionDef" : "FunctionDef", start(first), -1);
+        ++p;
+        node.attribute("name", expectName());
+        if(decorators != null)
+            node.add(decorators);
+        Element arguments = new Element("arguments", start(p), -1);
+        expectOp("(");
+        parseParameters(arguments, ")");
+        expectOp(")");
+        if(is("->")){
+            ++p;
+            arguments.add(wrap("returns", parseTest()));
+        }
+        expectOp(":");
+        arguments.setSpan(arguments.open, end(p - 1));
+        node.add(arguments);
+        // the colon is in the arguments
+        --p;
+        node.add(parseBody());
+        return close(node);
+    }
+
+    private Element parseClassDef(int first, Element decorators){
+        Element node = new Element("ClassDef", start(first), -1);
+        ++p;
+        node.attribute("name", expectName());
+        if(decorators != null)
+            node.add(decorators);
+        if(is("(")){
+            ++p;
+            parseArguments(node, "bases");
+            expectOp(")");
+        }
+        node.add(parseBody());
+        return close(node);
+    }
+
+    /**
+     * parse the parameters of a function or a lambda until a closing token
+     * @param arguments : element receiving the parameters and their default values
+     */
+    private void parseParameters(Element arguments, String closing){
+        boolean lambda = closing.equals(":");
+        while(!is(closing)){
+            if(is("/") || is("*") && (isNext(",") || isNext(closing))){
+                ++p;
+            }else{
+                if(is("*") || is("**"))
+                    ++p;
+                Element arg = new Element("arg", start(p), end(p)).attribute("name", expectName());
+                if(!lambda && is(":")){
+                    ++p;
+                    arg.add(wrap("annotation", parseTest()));
+                    close(arg);
+                }
+                arguments.add(arg);
+                if(is("=")){
+                    ++p;
+                    arguments.add(parseTest());
+                }
+            }
+            if(!is(","))
+                break;
+            ++p;
+        }
+    }
+
+    private Element parseSmallStatement(){
+        int first = p;
+        if(is("pass"))
+            return keyword("Pass");
+        if(is("break"))
+            return keyword("Break");
+        if(is("continue"))
+            return keyword("Continue");
+        if(is("return")){
+            Element node = keyword("Return");
+            if(startsExpression())
+                node.add(parseTestList());
+            return close(node);
+        }
+        if(is("raise")){
+            Element node = keyword("Raise");
+            if(startsExpression()){
+                node.add(wrap("exc", parseTest()));
+                if(is("from")){
+                    ++p;
+                    node.add(wrap("cause", parseTest()));
+                }
+            }
+            return close(node);
+        }
+        if(is("global") || is("nonlocal")){
+            Element node = keyword(is("global") ? "Global" : "Nonlocal");
+            Element names = new Element("names", start(p), -1);
+            do {
+                if(!names.children.isEmpty())
+                    ++p;
+                names.add(parseIdentifier("name"));
+            } while(is(","));
+            return close(node.add(close(names)));
+        }
+        if(is("del")){
+            Element node = keyword("Delete");
+            Element targets = new Element("targets", start(p), -1);
+            do {
+                if(!targets.children.isEmpty())
+                    ++p;
+                targets.add(setContext(parseStarExpression(), "Del"));
+            } while(is(",") && !isNext(";") && tokens.getType(p + 1) != NEWLINE);
+            if(is(","))
+                ++p;
+            return close(node.add(close(targets)));
+        }
+        if(is("assert")){
+            Element node = keyword("Assert");
+            node.add(wrap("test", parseTest()));
+            if(is(",")){
+                ++p;
+                node.add(wrap("msg", parseTest()));
+            }
+            return close(node);
+        }
+        if(is("import")){
+            Element node = keyword("Import");
+            Element names = new Element("names", start(p), -1);
+            do {
+                if(!names.children.isEmpty())
+                    ++p;
+                names.add(parseAlias(true));
+            } while(is(","));
+            return close(node.add(close(names)));
+        }
+        if(is("from"))
+            return parseImportFrom();
+
+        // expression, assignment
+        Element expression = is("yield") ? parseYield() : parseExpressionList(false);
+        if(is("=")){
+            Element node = new Element("Assign", expression.outerOpen, -1);
+            List<Element> targets = new ArrayList<>();
+            targets.add(expression);
+            Element value = null;
+            while(is("=")){
+                ++p;
+                value = is("yield") ? parseYield() : parseExpressionList(false);
+                if(is("="))
+                    targets.add(value);
+            }
+            Element targetList = new Element("targets", expression.outerOpen, value.outerOpen);
+            for(Element target : targets)
+                targetList.add(setContext(target, "Store"));
+            node.add(targetList).add(value);
+            return close(node);
+        }
+        for(String[] operator : AUG_OPERATORS){
+            if(is(operator[0])){
+                Element node = new Element("AugAssign", expression.outerOpen, -1);
+                node.add(wrap("target", setContext(expression, "Store")));
+                int op = p++;
+                Element opElement = new Element(operator[1], end(op - 1), start(op + 1));
+                node.add(new Element("op", opElement.open, opElement.close).add(opElement));
+                node.add(wrap("value", is("yield") ? parseYield() : parseTestList()));
+                return close(node);
+            }
+        }
+        if(is(":")){
+            Element node = new Element("AnnAssign", expression.outerOpen, -1);
+            node.add(wrap("target", setContext(expression, "Store")));
+            ++p;
+            node.add(wrap("annotation", parseTest()));
+            if(is("=")){
+                ++p;
+                node.add(wrap("value", is("yield") ? parseYield() : parseTestList()));
+            }
+            return close(node);
+        }
+        if(p == first)
+            throw error("invalid syntax");
+        return wrap("Expr", expression);
+    }
+
+    private Element parseImportFrom(){
+        Element node = keyword("ImportFrom");
+        int level = 0;
+        while(is(".") || is("...")){
+            level += tokens.getEnd(p) - tokens.getStart(p);
+            ++p;
+        }
+        if(!is("import")){
+            StringBuilder module = new StringBuilder(expectName());
+            while(is(".")){
+                ++p;
+                module.append('.').append(expectName());
+            }
+            node.attribute("module", module.toString());
+        }
+        node.attribute("level", String.valueOf(level));
+        expectKeyword("import");
+        boolean parenthesized = is("(");
+        if(parenthesized)
+            ++p;
+        Element names = new Element("names", start(p), -1);
+        if(is("*")){
+            names.add(new Element("alias", start(p), end(p)).attribute("name", "*"));
+            ++p;
+        }else{
+            do {
+                if(!names.children.isEmpty())
+                    ++p;
+                if(parenthesized && is(")"))
+                    break;
+                names.add(parseAlias(false));
+            } while(is(","));
+        }
+        node.add(close(names));
+        if(parenthesized)
+            expectOp(")");
+        return close(node);
+    }
+
+    /**
+     * @param dotted : true if the name can be a dotted name
+     */
+    private Element parseAlias(boolean dotted){
+        Element alias = new Element("alias", start(p), -1);
+        StringBuilder name = new StringBuilder(expectName());
+        while(dotted && is(".")){
+            ++p;
+            name.append('.').append(expectName());
+        }
+        alias.attribute("name", name.toString());
+        if(is("as")){
+            ++p;
+            alias.attribute("asname", expectName());
+        }
+        alias.setSpan(alias.open, end(p - 1));
+        return alias;
+    }
+
+    //-------------------------------------------------------------------------------------------- expressions
+
+    /**
+     * parse expressions separated by commas, a tuple if there is a comma
+     * @param bitwise : true for expressions without comparisons and boolean operators (targets of for and del)
+     */
+    private Element parseExpressionList(boolean bitwise){
+        Element first = bitwise ? parseStarExpression() : parseStarTest();
+        if(!is(","))
+            return first;
+        Element elts = new Element("elts", first.outerOpen, -1).add(first);
+        int last = p;
+        while(is(",")){
+            last = p++;
+            if(!startsExpression())
+                break;
+            elts.add(bitwise ? parseStarExpression() : parseStarTest());
+        }
+        close(elts);
+        return new Element("Tuple", first.outerOpen, Math.max(elts.close, end(last))).attribute("ctx", "Load").add(elts);
+    }
+
+    private Element parseTestList(){
+        return parseExpressionList(false);
+    }
+
+    private Element parseStarTest(){
+        return is("*") ? parseStarred(false) : parseNamedExpression();
+    }
+
+    private Element parseStarExpression(){
+        return is("*") ? parseStarred(true) : parseExpression();
+    }
+
+    private Element parseStarred(boolean bitwise){
+        Element node = new Element("Starred", start(p), -1).attribute("ctx", "Load");
+        ++p;
+        node.add(bitwise ? parseExpression() : parseTest());
+        return close(node);
+    }
+
+    private Element parseNamedExpression(){
+        Element test = parseTest();
+        if(!is(":="))
+            return test;
+        Element node = new Element("NamedExpr", test.outerOpen, -1);
+        node.add(wrap("target", setContext(test, "Store")));
+        ++p;
+        node.add(wrap("value", parseTest()));
+        return close(node);
+    }
+
+    private Element parseTest(){
+        if(is("lambda"))
+            return parseLambda(true);
+        Element body = parseOrTest();
+        if(!is("if"))
+            return body;
+        // the else of a conditional expression, not an if of a comprehension
+        Element node = new Element("IfExp", body.outerOpen, -1).add(body);
+        ++p;
+        node.add(parseOrTest());
+        expectKeyword("else");
+        node.add(parseTest());
+        return close(node);
+    }
+
+    /**
+     * test without conditional expression, in the conditions of comprehensions
+     */
+    private Element parseTestNoCond(){
+        return is("lambda") ? parseLambda(false) : parseOrTest();
+    }
+
+    private Element parseLambda(boolean conditional){
+        Element node = new Element("Lambda", start(p), -1);
+        ++p;
+        if(!is(":")){
+            Element arguments = new Element("arguments", start(p), -1);
+            parseParameters(arguments, ":");
+            node.add(close(arguments));
+        }
+        expectOp(":");
+        node.add(conditional ? parseTest() : parseTestNoCond());
+        return close(node);
+    }
+
+    private Element parseOrTest(){
+        return parseBoolOp("or", "Or");
+    }
+
+    private Element parseBoolOp(String keyword, String op){
+        Element first = keyword.equals("or") ? parseBoolOp("and", "And") : parseNotTest();
+        if(!is(keyword))
+            return first;
+        Element node = new Element("BoolOp", first.outerOpen, -1).attribute("op", op).add(first);
+        while(is(keyword)){
+            ++p;
+            node.add(keyword.equals("or") ? parseBoolOp("and", "And") : parseNotTest());
+        }
+        return close(node);
+    }
+
+    private Element parseNotTest(){
+        if(!is("not"))
+            return parseComparison();
+        Element node = new Element("UnaryOp", start(p), -1).attribute("op", "Not");
+        ++p;
+        return close(node.add(parseNotTest()));
+    }
+
+    private Element parseComparison(){
+        Element first = parseExpression();
+        if(!isComparison())
+            return first;
+        Element node = new Element("Compare", first.outerOpen, -1).add(wrap("value", first));
+        while(isComparison()){
+            int op = p;
+            if(is("not"))
+                expectKeywordAt(++p, "in");
+            else if(is("is") && isNext("not"))
+                ++p;
+            ++p;
+            node.add(new Element(Labels.CMPOP, end(op - 1), start(p)));
+            node.add(wrap("value", parseExpression()));
+        }
+        return close(node);
+    }
+
+    private boolean isComparison(){
+        for(String op : COMPARISONS)
+            if(is(op))
+                return !op.equals("not") || isNext("in");
+        return false;
+    }
+
+    /**
+     * expression with binary operators, from the lowest priority
+     */
+    private Element parseExpression(){
+        return parseBinOp(0);
+    }
+
+    private Element parseBinOp(int level){
+        if(level == BIN_OPERATORS.length)
+            return parseFactor();
+        Element left = parseBinOp(level + 1);
+        while(true){
+            String opName = null;
+            for(String[] operator : BIN_OPERATORS[level])
+                if(is(operator[0]))
+                    opName = operator[1];
+            if(opName == null)
+                return left;
+            int op = p++;
+            Element right = parseBinOp(level + 1);
+            left = binOp(left, op, opName, right);
+        }
+    }
+
+    private Element binOp(Element left, int op, String opName, Element right){
+        Element node = new Element(Labels.BIN_OP, left.outerOpen, right.outerClose);
+        node.add(left);
+        node.add(new Element(opName, end(op - 1), start(op + 1)));
+        node.add(right);
+        return node;
+    }
+
+    private Element parseFactor(){
+        String opName = is("-") ? "USub" : is("+") ? "UAdd" : is("~") ? "Invert" : null;
+        if(opName == null)
+            return parsePower();
+        Element node = new Element("UnaryOp", start(p), -1).attribute("op", opName);
+        ++p;
+        return close(node.add(parseFactor()));
+    }
+
+    private Element parsePower(){
+        Element base;
+        if(is("await")){
+            base = new Element("Await", start(p), -1);
+            ++p;
+            close(base.add(parseAtomExpression()));
+        }else{
+            base = parseAtomExpression();
+        }
+        if(!is("**"))
+            return base;
+        int op = p++;
+        return binOp(base, op, "Pow", parseFactor());
+    }
+
+    /**
+     * atom followed by calls, subscripts and attributes
+     */
+    private Element parseAtomExpression(){
+        Element node = parseAtom();
+        while(true){
+            if(is("(")){
+                Element call = new Element("Call", node.outerOpen, -1).add(wrap("func", node));
+                ++p;
+                parseArguments(call, "args");
+                expectOp(")");
+                node = close(call, end(p - 1));
+            }else if(is("[")){
+                Element subscript = new Element("Subscript", node.outerOpen, -1).attribute("ctx", "Load");
+                subscript.add(wrap("value", node));
+                Element slice = new Element("slice", start(p), -1);
+                ++p;
+                slice.add(parseSubscripts());
+                expectOp("]");
+                subscript.add(close(slice, end(p - 1)));
+                node = close(subscript, end(p - 1));
+            }else if(is(".")){
+                Element attribute = new Element("Attribute", node.outerOpen, -1).attribute("ctx", "Load");
+                attribute.add(wrap("value", node));
+                ++p;
+                attribute.add(parseIdentifier(Labels.ATTR));
+                node = close(attribute);
+            }else{
+                return node;
+            }
+        }
+    }
+
+    /**
+     * parse the arguments of a call or of a class until the closing parenthesis, the consecutive positional
+     * arguments and the consecutive keyword arguments are grouped in elements in the order of the code
+     * @param node : call or class
+     * @param positionalTag : tag of the positional arguments
+     */
+    private void parseArguments(Element node, String positionalTag){
+        Element positional = null;
+        Element keywords = null;
+        // a **mapping is followed only by keyword arguments and other **mappings
+        boolean isMappingUnpacked = false;
+        boolean hasKeywords = false;
+        while(!is(")")){
+            Element argument;
+            boolean isKeyword;
+            if(is("**")){
+                argument = new Element("keyword", start(p), -1);
+                ++p;
+                argument.add(wrap("value", parseTest()));
+                isKeyword = true;
+                isMappingUnpacked = true;
+            }else if(type() == NAME && isNext("=")){
+                argument = new Element("keyword", start(p), -1).attribute("arg", expectName());
+                ++p;
+                argument.add(wrap("value", parseTest()));
+                isKeyword = true;
+            }else{
+                argument = parseStarTest();
+                if(is("for") || is("async") && isNext("for"))
+                    argument = parseComprehension("GeneratorExp", argument.outerOpen, wrap("elt", argument));
+                isKeyword = false;
+            }
+            if(isKeyword){
+                if(keywords == null){
+                    if(positional != null)
+                        node.add(close(positional));
+                    positional = null;
+                    keywords = new Element("keywords", argument.outerOpen, -1);
+                }
+                keywords.add(close(argument));
+                hasKeywords = true;
+            }else{
+                // a *iterable can follow keyword arguments, a positional argument cannot
+                if(isMappingUnpacked && argument.tag.equals("Starred"))
+                    throw error("iterable argument unpacking after keyword argument unpacking");
+                if(hasKeywords && !argument.tag.equals("Starred"))
+                    throw error("positional argument after keyword argument");
+                // the elements are in the order of the code: f(a=1, *b) gives keywords then args
+                if(positional == null){
+                    if(keywords != null)
+                        node.add(close(keywords));
+                    keywords = null;
+                    positional = new Element(positionalTag, argument.outerOpen, -1);
+                }
+                positional.add(argument);
+            }
+            if(!is(","))
+                break;
+            ++p;
+        }
+        if(positional != null)
+            node.add(close(positional));
+        if(keywords != null)
+            node.add(close(keywords));
+    }
+
+    /**
+     * parse the content of the brackets of a subscript
+     */
+    private Element parseSubscripts(){
+        Element first = parseSubscript();
+        if(!is(","))
+            return first;
+        List<Element> dimensions = new ArrayList<>();
+        dimensions.add(first);
+        int last = p;
+        while(is(",")){
+            last = p++;
+            if(is("]"))
+                break;
+            dimensions.add(parseSubscript());
+        }
+        boolean extended = false;
+        for(Element dimension : dimensions)
+            extended |= dimension.tag.equals("Slice");
+        if(extended){
+            Element dims = new Element("dims", first.outerOpen, -1);
+            for(Element dimension : dimensions)
+                dims.add(dimension);
+            return new Element("ExtSlice", first.outerOpen, end(last)).add(close(dims));
+        }
+        Element elts = new Element("elts", first.outerOpen, -1);
+        for(Element dimension : dimensions)
+            elts.add(dimension.children.get(0));
+        Element tuple = new Element("Tuple", first.outerOpen, end(last)).attribute("ctx", "Load").add(close(elts));
+        return wrap("Index", tuple);
+    }
+
+    private Element parseSubscript(){
+        int open = start(p);
+        Element lower = is(":") ? null : parseStarTest();
+        if(!is(":"))
+            return wrap("Index", lower);
+        Element slice = new Element("Slice", lower == null ? open : lower.outerOpen, -1);
+        if(lower != null)
+            slice.add(wrap("lower", lower));
+        ++p;
+        if(!is(":") && !is("]") && !is(","))
+            slice.add(wrap("upper", parseTest()));
+        if(is(":")){
+            ++p;
+            if(!is("]") && !is(","))
+                slice.add(wrap("step", parseTest()));
+        }
+        return close(slice, end(p - 1));
+    }
+
+    private Element parseAtom(){
+        int first = p;
+        if(is("(")){
+            ++p;
+            if(is(")")){
+                ++p;
+                return new Element("Tuple", start(first), end(p - 1)).attribute("ctx", "Load");
+            }
+            Element node;
+            if(is("yield")){
+                node = parseYield();
+            }else{
+                node = parseStarTest();
+                if(is("for") || is("async") && isNext("for")){
+                    node = parseComprehension("GeneratorExp", start(first), wrap("elt", node));
+                    expectOp(")");
+                    return close(node, end(p - 1));
+                }
+                if(is(",")){
+                    Element elts = new Element("elts", node.outerOpen, -1).add(node);
+                    int last = p;
+                    while(is(",")){
+                        last = p++;
+                        if(is(")"))
+                            break;
+                        elts.add(parseStarTest());
+                    }
+                    close(elts);
+                    node = new Element("Tuple", elts.open, Math.max(elts.close, end(last))).attribute("ctx", "Load").add(elts);
+                }
+            }
+            expectOp(")");
+            node.outerOpen = start(first);
+            node.outerClose = end(p - 1);
+            return node;
+        }
+        if(is("[")){
+            ++p;
+            if(is("]")){
+                ++p;
+                return new Element("List", start(first), end(p - 1)).attribute("ctx", "Load");
+            }
+            Element element = parseStarTest();
+            Element node;
+            if(is("for") || is("async") && isNext("for")){
+                node = parseComprehension("ListComp", start(first), wrap("elt", element));
+            }else{
+                node = new Element("List", start(first), -1).attribute("ctx", "Load");
+                node.add(parseElements(element, "]"));
+            }
+            expectOp("]");
+            return close(node, end(p - 1));
+        }
+        if(is("{")){
+            ++p;
+            Element node;
+            if(is("}")){
+                node = new Element("Dict", start(first), -1);
+            }else if(is("**") || !is("*") && isDictItem()){
+                node = parseDict(first);
+            }else{
+                Element element = parseStarTest();
+                if(is("for") || is("async") && isNext("for")){
+                    node = parseComprehension("SetComp", start(first), wrap("elt", element));
+                }else{
+                    node = new Element("Set", start(first), -1);
+                    node.add(parseElements(element, "}"));
+                }
+            }
+            expectOp("}");
+            return close(node, end(p - 1));
+        }
+        switch(type()){
+            case NAME:
+                if(is("True") || is("False") || is("None"))
+                    return token("NameConstant");
+                if(KEYWORDS.contains(tokens.getText(p)))
+                    throw error("invalid syntax");
+                Element name = token(Labels.NAME);
+                return name.attribute("ctx", "Load").attribute("name", tokens.getText(first));
+            case NUMBER:
+                return token("Num");
+            case STRING:
+                return parseStrings();
+            default:
+                if(is("..."))
+                    return token("Ellipsis");
+                throw error("invalid syntax");
+        }
+    }
+
+    /**
+     * @return : true if the first item of the braces is a key followed by a colon
+     */
+    private boolean isDictItem(){
+        int start = p;
+        try {
+            parseTest();
+            return is(":");
+        }catch (IllegalArgumentException e){
+            return false;
+        }finally {
+            p = start;
+        }
+    }
+
+    private Element parseDict(int first){
+        Element node = new Element("Dict", start(first), -1);
+        while(!is("}")){
+            if(is("**")){
+                ++p;
+                node.add(parseExpression());
+            }else{
+                Element key = parseTest();
+                expectOp(":");
+                Element value = parseTest();
+                if(is("for") || is("async") && isNext("for")){
+                    if(!node.children.isEmpty())
+                        throw error("invalid syntax");
+                    return parseComprehension("DictComp", start(first), wrap("key", key), wrap("value", value));
+                }
+                node.add(key).add(value);
+            }
+            if(!is(","))
+                break;
+            ++p;
+        }
+        return node;
+    }
+
+    /**
+     * parse the elements of a list or a set after the first one
+     */
+    private Element parseElements(Element first, String closing){
+        Element elts = new Element("elts", first.outerOpen, -1).add(first);
+        while(is(",")){
+            ++p;
+            if(is(closing))
+                break;
+            elts.add(parseStarTest());
+        }
+        return close(elts);
+    }
+
+    /**
+     * parse the generators of a comprehension
+     * @param tag : tag of the comprehension
+     * @param open : start of the comprehension
+     * @param elements : element of the comprehension, or key and value of a dict
+     */
+    private Element parseComprehension(String tag, int open, Element... elements){
+        Element node = new Element(tag, open, -1);
+        for(Element element : elements)
+            node.add(element);
+        Element generators = new Element("generators", start(p), -1);
+        while(is("for") || is("async") && isNext("for")){
+            Element comprehension = new Element("comprehension", start(p), -1);
+            if(is("async")){
+                comprehension.attribute("is_async", "1");
+                ++p;
+            }
+            ++p;
+            comprehension.add(wrap("target", setContext(parseExpressionList(true), "Store")));
+            expectKeyword("in");
+            comprehension.add(wrap("iter", parseOrTest()));
+            Element ifs = null;
+            while(is("if")){
+                ++p;
+                Element condition = parseTestNoCond();
+                if(ifs == null)
+                    ifs = new Element("ifs", condition.outerOpen, -1);
+                ifs.add(condition);
+            }
+            if(ifs != null)
+                comprehension.add(close(ifs));
+            generators.add(close(comprehension));
+        }
+        return close(node.add(close(generators)));
+    }
+
+    private Element parseYield(){
+        Element node = keyword("Yield");
+        if(is("from")){
+            node = new Element("YieldFrom", node.open, -1);
+            ++p;
+            node.add(parseTest());
+        }else if(startsExpression()){
+            node.add(parseTestList());
+        }
+        return close(node);
+    }
+
+    /**
+     * parse consecutive strings, which are one string
+     */
+    private Element parseStrings(){
+        int first = p;
+        boolean formatted = false;
+        boolean bytes = false;
+        while(type() == STRING){
+            for(int i = tokens.getStart(p); "\"'".indexOf(source.charAt(i)) < 0; ++i){
+                char c = Character.toLowerCase(source.charAt(i));
+                formatted |= c == 'f';
+                bytes |= c == 'b';
+            }
+            ++p;
+        }
+        Element s = new Element("s", start(first), end(p - 1));
+        return new Element(formatted ? "JoinedStr" : bytes ? "Bytes" : "Str", s.open, s.close).add(s);
+    }
+
+    //-------------------------------------------------------------------------------------------- helpers
+
+    /**
+     * set the context of a target and of its elements
+     * @param ctx : Store or Del
+     */
+    private Element setContext(Element target, String ctx){
+        if(target.getAttribute("ctx") != null)
+            target.setAttribute("ctx", ctx);
+        if(target.tag.equals("Tuple") || target.tag.equals("List")){
+            for(Element elts : target.children)
+                for(Element element : elts.children)
+                    setContext(element, ctx);
+        }else if(target.tag.equals("Starred")){
+            setContext(target.children.get(0), ctx);
+        }
+        return target;
+    }
+
+    /**
+     * @return : true if the current token can start an expression
+     */
+    private boolean startsExpression(){
+        switch(type()){
+            case NAME:
+                String name = tokens.getText(p);
+                return !KEYWORDS.contains(name) || name.equals("not") || name.equals("lambda") || name.equals("await")
+                        || name.equals("None") || name.equals("True") || name.equals("False");
+            case NUMBER:
+            case STRING:
+                return true;
+            case OP:
+                return is("(") || is("[") || is("{") || is("-") || is("+") || is("~") || is("*") || is("...");
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return : element around a child, with the span of the child and its parentheses
+     */
+    private static Element wrap(String tag, Element child){
+        return new Element(tag, child.outerOpen, child.outerClose).add(child);
+    }
+
+    /**
+     * end an element at the end of its last child
+     */
+    private static Element close(Element node){
+        if(node.children.isEmpty())
+            return node;
+        if(node.open < 0)
+            node.open = node.outerOpen = node.children.get(0).outerOpen;
+        return close(node, last(node).outerClose);
+    }
+
+    private static Element close(Element node, int end){
+        node.close = node.outerClose = Math.max(node.close, end);
+        return node;
+    }
+
+    private static Element last(Element node){
+        return node.children.get(node.children.size() - 1);
+    }
+
+    /**
+     * @return : element of a keyword token, the current token is the next one
+     */
+    private Element keyword(String tag){
+        return token(tag);
+    }
+
+    private Element token(String tag){
+        Element node = new Element(tag, start(p), end(p));
+        ++p;
+        return node;
+    }
+
+    private Element parseIdentifier(String tag){
+        Element node = new Element(tag, start(p), end(p));
+        expectName();
+        return node;
+    }
+
+    private String expectName(){
+        if(type() != NAME || KEYWORDS.contains(tokens.getText(p)))
+            throw error("expected a name");
+        return tokens.getText(p++);
+    }
+
+    private void expect(int type){
+        if(type() != type)
+            throw error("invalid syntax");
+        ++p;
+    }
+
+    private void expectOp(String op){
+        if(!is(op))
+            throw error("expected '" + op + "'");
+        ++p;
+    }
+
+    private void expectKeyword(String keyword){
+        expectKeywordAt(p, keyword);
+        ++p;
+    }
+
+    private void expectKeywordAt(int token, String keyword){
+        if(!is(token, keyword))
+            throw error("expected '" + keyword + "'");
+    }
+
+    private int type(){
+        return tokens.getType(p);
+    }
+
+    private boolean is(String text){
+        return tokens.is(p, text);
+    }
+
+    private boolean is(int token, String text){
+        return tokens.is(token, text);
+    }
+
+    private boolean isNext(String text){
+        return p + 1 < tokens.size() && tokens.is(p + 1, text);
+    }
+
+    private int start(int token){
+        return tokens.getStart(token);
+    }
+
+    private int end(int token){
+        return tokens.getEnd(token);
+    }
+
+    /**
+     * @return : end of the last token of code before a token, after the previous statement
+     */
+    private int previousEnd(int token){
+        int previous = token - 1;
+        while(previous > 0 && tokens.getType(previous) >= NEWLINE)
+            --previous;
+        return tokens.getEnd(previous);
+    }
+
+    private IllegalArgumentException error(String message){
+        return new IllegalArgumentException("line " + tokens.getLine(Math.min(p, tokens.size() - 1)) + ": " + message);
+    }
+}
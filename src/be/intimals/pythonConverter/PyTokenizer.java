@@ -0,0 +1,293 @@
+package be.intimals.pythonConverter;
+
+import java.util.Arrays;
+
+/**
+ * Split a Python 3 source in tokens, as the tokenize module does: names, numbers, strings and operators,
+ * NEWLINE at the end of each logical line, INDENT and DEDENT when the indentation changes and END at the end.
+ * Comments, blank lines and the new lines inside brackets or after a backslash are not tokens.
+ * A token is given by its start and end offsets in the source, and the line of its start.
+ */
+public class PyTokenizer {
+    public static final int NAME = 0;
+    public static final int NUMBER = 1;
+    public static final int STRING = 2;
+    public static final int OP = 3;
+    public static final int NEWLINE = 4;
+    public static final int INDENT = 5;
+    public static final int DEDENT = 6;
+    public static final int END = 7;
+
+    // longest operators first
+    private static final String[] OPERATORS = {"**=", "//=", ">>=", "<<=", "...", "->", ":=", "**", "//", "<<", ">>",
+            "<=", ">=", "==", "!=", "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^=", "@=",
+            "(", ")", "[", "]", "{", "}", ",", ":", ";", ".", "+", "-", "*", "/", "%", "&", "|", "^", "~", "<", ">",
+            "=", "@"};
+    private static final String STRING_PREFIXES = "rRbBuUfF";
+
+    private String source;
+    private int[] types = new int[256];
+    private int[] starts = new int[256];
+    private int[] ends = new int[256];
+    private int[] lines = new int[256];
+    private int size = 0;
+
+    // position in the source
+    private int pos = 0;
+    private int line = 1;
+
+    /**
+     * @param source : Python code, its lines end with \n
+     * @throws IllegalArgumentException : if the code cannot be split in tokens
+     */
+    public PyTokenizer(String source){
+        this.source = source;
+        tokenize();
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public int getType(int token){
+        return types[token];
+    }
+
+    public int getStart(int token){
+        return starts[token];
+    }
+
+    public int getEnd(int token){
+        return ends[token];
+    }
+
+    public int getLine(int token){
+        return lines[token];
+    }
+
+    /**
+     * @return : true if the token is the given name or operator
+     */
+    public boolean is(int token, String text){
+        return (types[token] == NAME || types[token] == OP) && ends[token] - starts[token] == text.length()
+                && source.startsWith(text, starts[token]);
+    }
+
+    public String getText(int token){
+        return source.substring(starts[token], ends[token]);
+    }
+
+    private void tokenize(){
+        int length = source.length();
+        int[] indents = new int[16];
+        int nbIndents = 1;
+        // open brackets
+        int depth = 0;
+        boolean lineStart = true;
+        boolean lineHasToken = false;
+        while(pos < length){
+            if(lineStart){
+                // indentation of a logical line
+                int column = 0;
+                int p = pos;
+                while(p < length){
+                    char c = source.charAt(p);
+                    if(c == ' ')
+                        ++column;
+                    else if(c == '\t')
+                        column = (column / 8 + 1) * 8;
+                    else if(c == '\f')
+                        column = 0;
+                    else
+                        break;
+                    ++p;
+                }
+                pos = p;
+                if(p == length)
+                    break;
+                char c = source.charAt(p);
+                if(c == '#' || c == '\n'){
+                    // blank line
+                    skipComment();
+                    if(pos < length){
+                        ++pos;
+                        ++line;
+                    }
+                    continue;
+                }
+                lineStart = false;
+                if(column > indents[nbIndents - 1]){
+                    if(nbIndents == indents.length)
+                        indents = Arrays.copyOf(indents, nbIndents * 2);
+                    indents[nbIndents++] = column;
+                    add(INDENT, p, p);
+                }else{
+                    while(column < indents[nbIndents - 1]){
+                        --nbIndents;
+                        add(DEDENT, p, p);
+                    }
+                    if(column != indents[nbIndents - 1])
+                        throw error("unindent does not match any outer indentation level");
+                }
+            }
+            char c = source.charAt(pos);
+            if(c == ' ' || c == '\t' || c == '\f'){
+                ++pos;
+            }else if(c == '#'){
+                skipComment();
+            }else if(c == '\\' && pos + 1 < length && source.charAt(pos + 1) == '\n'){
+                pos += 2;
+                ++line;
+            }else if(c == '\n'){
+                if(depth == 0){
+                    if(lineHasToken)
+                        add(NEWLINE, pos, pos + 1);
+                    lineHasToken = false;
+                    lineStart = true;
+                }
+                ++pos;
+                ++line;
+            }else{
+                int start = pos;
+                if(Character.isDigit(c) || c == '.' && pos + 1 < length && Character.isDigit(source.charAt(pos + 1))){
+                    readNumber();
+                    add(NUMBER, start, pos);
+                }else if(c == '"' || c == '\''){
+                    int startLine = line;
+                    readString();
+                    add(STRING, start, pos, startLine);
+                }else if(Character.isUnicodeIdentifierStart(c) || c == '_'){
+                    while(pos < length && (Character.isUnicodeIdentifierPart(source.charAt(pos))))
+                        ++pos;
+                    if(pos < length && (source.charAt(pos) == '"' || source.charAt(pos) == '\'') && isStringPrefix(start, pos)){
+                        int startLine = line;
+                        readString();
+                        add(STRING, start, pos, startLine);
+                    }else{
+                        add(NAME, start, pos);
+                    }
+                }else{
+                    String op = null;
+                    for(String operator : OPERATORS){
+                        if(source.startsWith(operator, pos)){
+                            op = operator;
+                            break;
+                        }
+                    }
+                    if(op == null)
+                        throw error("invalid character '" + c + "'");
+                    if(op.equals("(") || op.equals("[") || op.equals("{"))
+                        ++depth;
+                    else if((op.equals(")") || op.equals("]") || op.equals("}")) && depth > 0)
+                        --depth;
+                    pos += op.length();
+                    add(OP, start, pos);
+                }
+                lineHasToken = true;
+            }
+        }
+        if(lineHasToken)
+            add(NEWLINE, length, length);
+        while(nbIndents > 1){
+            --nbIndents;
+            add(DEDENT, length, length);
+        }
+        add(END, length, length);
+    }
+
+    private void skipComment(){
+        while(pos < source.length() && source.charAt(pos) != '\n')
+            ++pos;
+    }
+
+    private boolean isStringPrefix(int start, int end){
+        if(end - start > 2)
+            return false;
+        for(int i = start; i < end; ++i)
+            if(STRING_PREFIXES.indexOf(source.charAt(i)) < 0)
+                return false;
+        return true;
+    }
+
+    private void readNumber(){
+        int length = source.length();
+        if(source.charAt(pos) == '0' && pos + 1 < length && "xXoObB".indexOf(source.charAt(pos + 1)) >= 0){
+            pos += 2;
+            while(pos < length && (Character.isLetterOrDigit(source.charAt(pos)) || source.charAt(pos) == '_'))
+                ++pos;
+            return;
+        }
+        readDigits();
+        if(pos < length && source.charAt(pos) == '.'){
+            ++pos;
+            readDigits();
+        }
+        if(pos < length && (source.charAt(pos) == 'e' || source.charAt(pos) == 'E')){
+            int p = pos + 1;
+            if(p < length && (source.charAt(p) == '+' || source.charAt(p) == '-'))
+                ++p;
+            if(p < length && Character.isDigit(source.charAt(p))){
+                pos = p;
+                readDigits();
+            }
+        }
+        if(pos < length && (source.charAt(pos) == 'j' || source.charAt(pos) == 'J'))
+            ++pos;
+    }
+
+    private void readDigits(){
+        while(pos < source.length() && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '_'))
+            ++pos;
+    }
+
+    /**
+     * read a string from its first quote
+     */
+    private void readString(){
+        int length = source.length();
+        char quote = source.charAt(pos);
+        boolean triple = source.startsWith("" + quote + quote + quote, pos);
+        pos += triple ? 3 : 1;
+        while(pos < length){
+            char c = source.charAt(pos);
+            if(c == '\\'){
+                if(pos + 1 < length && source.charAt(pos + 1) == '\n')
+                    ++line;
+                pos += 2;
+            }else if(c == quote && (!triple || source.startsWith("" + quote + quote + quote, pos))){
+                pos += triple ? 3 : 1;
+                return;
+            }else{
+                if(c == '\n'){
+                    if(!triple)
+                        throw error("end of line in a string");
+                    ++line;
+                }
+                ++pos;
+            }
+        }
+        throw error("end of file in a string");
+    }
+
+    private void add(int type, int start, int end){
+        add(type, start, end, line);
+    }
+
+    private void add(int type, int start, int end, int tokenLine){
+        if(size == types.length){
+            types = Arrays.copyOf(types, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            lines = Arrays.copyOf(lines, size * 2);
+        }
+        types[size] = type;
+        starts[size] = start;
+        ends[size] = end;
+        lines[size] = tokenLine;
+        ++size;
+    }
+
+    private IllegalArgumentException error(String message){
+        return new IllegalArgumentException("line " + line + ": " + message);
+    }
+}
@@ -0,0 +1,135 @@
+package be.intimals.pythonConverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watch a source directory and its sub-directories for XML files and their Python files.
+ * A file is given to the converter when it has not changed for a delay,
+ * so that the files which are still being written are not read.
+ */
+public class SourceWatcher {
+    private Path sourceDir;
+    private long delay;
+    private WatchService watchService;
+    private Map<WatchKey, Path> directories = new HashMap<>();
+    // xml files which changed -> time of their last change
+    private Map<String, Long> pending = new TreeMap<>();
+
+    /**
+     * start watching a directory, the changes are recorded from now on
+     * @param dir : directory contains xml files exported by pyRegurgitator
+     * @param delay : milliseconds without changes before a file is converted
+     * @throws IOException
+     */
+    public SourceWatcher(String dir, long delay) throws IOException {
+        this.sourceDir = Paths.get(dir).toAbsolutePath();
+        this.delay = delay;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        register(sourceDir.toFile());
+    }
+
+    /**
+     * register a directory and its sub-directories
+     * @param directory : directory
+     * @throws IOException
+     */
+    private void register(File directory) throws IOException {
+        Path dir = directory.toPath();
+        directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+        File[] subDirectories = directory.listFiles(File::isDirectory);
+        if(subDirectories != null)
+            for (File subDirectory : subDirectories) register(subDirectory);
+    }
+
+    /**
+     * give the xml files to the converter when they are complete, until the thread is interrupted
+     * @param converter : called with the name of each new or modified xml file
+     * @throws InterruptedException
+     */
+    public void watch(Consumer<String> converter) throws InterruptedException {
+        while(true){
+            WatchKey key;
+            if(pending.isEmpty()){
+                key = watchService.take();
+            }else{
+                long wait = Collections.min(pending.values()) + delay - System.currentTimeMillis();
+                key = watchService.poll(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+            }
+            if(key != null)
+                readEvents(key);
+            convertReadyFiles(converter);
+        }
+    }
+
+    /**
+     * record the files changed by the events of a directory
+     * @param key : key of the directory
+     */
+    private void readEvents(WatchKey key){
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if(event.kind() == OVERFLOW){
+                // events are lost, all files are checked
+                addFiles(sourceDir.toFile());
+                continue;
+            }
+            Path file = dir.resolve((Path) event.context());
+            String name = file.toString();
+            if(event.kind() == ENTRY_CREATE && Files.isDirectory(file)){
+                try {
+                    register(file.toFile());
+                }catch (IOException e){
+                    System.out.println("Watch directory error " + e);
+                }
+                // files written before the directory was registered
+                addFiles(file.toFile());
+            }else if(event.kind() != ENTRY_DELETE){
+                String lowerName = Utils.stripGzipSuffix(name.toLowerCase());
+                if(lowerName.endsWith(".xml"))
+                    pending.put(name, System.currentTimeMillis());
+                else if(lowerName.endsWith(".py"))
+                    pending.put(Utils.getXmlFile(name), System.currentTimeMillis());
+            }
+        }
+        if(!key.reset())
+            directories.remove(key);
+    }
+
+    /**
+     * record all xml files of a directory and its sub-directories
+     * @param directory : directory
+     */
+    private void addFiles(File directory){
+        ArrayList<String> files = new ArrayList<>();
+        Utils.populateFileList(directory, files);
+        for (String fi : files)
+            pending.put(fi, System.currentTimeMillis());
+    }
+
+    /**
+     * convert the xml files which did not change during the delay,
+     * an xml file is forgotten if it or its python file does not exist
+     * @param converter : converter
+     */
+    private void convertReadyFiles(Consumer<String> converter){
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Long>> it = pending.entrySet().iterator();
+        while(it.hasNext()){
+            Map.Entry<String, Long> entry = it.next();
+            if(now - entry.getValue() < delay)
+                continue;
+            it.remove();
+            String xmlFile = entry.getKey();
+            String pyFile = Utils.getPyFile(xmlFile);
+            if(new File(xmlFile).isFile() && new File(pyFile).isFile())
+                converter.accept(xmlFile);
+        }
+    }
+}
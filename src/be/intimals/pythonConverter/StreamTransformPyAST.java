@@ -0,0 +1,878 @@
+package be.intimals.pythonConverter;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.*;
+
+import static be.intimals.pythonConverter.CompactTree.*;
+import static be.intimals.pythonConverter.Utils.*;
+
+/**
+ * transform a Python XML to Intimals XML format without building a tree in memory.
+ *
+ * The attributes of a node depend on the whole text of its subtree, so the input is read twice:
+ * the first pass keeps for each element the number of lines and the span of its text content
+ * and what TransformPyAST needs to know about its children (ElementSummaries, in temporary files),
+ * the second pass applies the same rules as TransformPyAST on the stream of events and gives the result
+ * to a TreeHandler. The lines of the Python file behind the stream are released from the column finder,
+ * so the heap used depends on the depth of the document and on the Python file, not on the XML size.
+ * The names of the nodes are in Labels, so they are compared by identity.
+ */
+public class StreamTransformPyAST {
+    private int id;
+    private PyColumnFinder columnFinder;
+    private NodeRules rules;
+
+    // summary of the elements collected by the first pass, in document order
+    private ElementSummaries summaries;
+
+    private Events events;
+    // open elements of the second pass, and how their children are updated
+    private static final int UPDATE_CHILDREN = 0;
+    private static final int COPY = 1;
+    private static final int LIST = 2;
+    private static final int BLOCK = 3;
+    private static final int REPEATED = 4;
+    private static final int CHANGE_TO_AST = 5;
+    private Deque<Frame> frames = new ArrayDeque<>();
+    private TreeHandler writer;
+    private boolean moduleFound;
+    private ConversionStats stats = new ConversionStats(null);
+
+    // factory of each thread, created once
+    private static final ThreadLocal<XMLInputFactory> inputFactories = ThreadLocal.withInitial(() -> {
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        return inputFactory;
+    });
+
+    public StreamTransformPyAST(PyColumnFinder columnFinder){
+        this(columnFinder, NodeRules.DEFAULT);
+    }
+
+    /**
+     * @param columnFinder : column finder of the python file
+     * @param rules : rules of the transformation of the elements
+     */
+    public StreamTransformPyAST(PyColumnFinder columnFinder, NodeRules rules){
+        this.columnFinder = columnFinder;
+        this.rules = rules;
+    }
+
+    /**
+     * measure the conversion, the first pass is the parse phase,
+     * the second pass is the transform phase and includes writing the output
+     * @param stats : statistics of the converted file
+     */
+    public void setStats(ConversionStats stats){
+        this.stats = stats;
+    }
+
+    /**
+     * transform a Python XML to Intimals XML format
+     * @param xmlFile : xml file exported by pyRegurgitator
+     * @param outputFile : xml file for freqtals
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public void transform(String xmlFile, String outputFile) throws IOException, XMLStreamException {
+        try (Writer out = getXMLWriter(outputFile)) {
+            transform(xmlFile, new XmlFormatter(out));
+        }
+    }
+
+    /**
+     * transform a Python XML to Intimals XML format
+     * @param xmlFile : xml file exported by pyRegurgitator
+     * @param handler : handler of the converted tree
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public void transform(String xmlFile, TreeHandler handler) throws IOException, XMLStreamException {
+        transform(xmlFile, getPyFileName(xmlFile), handler);
+    }
+
+    /**
+     * transform a Python XML to Intimals XML format
+     * @param xmlFile : xml file exported by pyRegurgitator, compressed with gzip or not
+     * @param pyFileName : name of the python file, given in the SourceFile node
+     * @param handler : handler of the converted tree
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public void transform(String xmlFile, String pyFileName, TreeHandler handler)
+            throws IOException, XMLStreamException {
+        XMLInputFactory inputFactory = inputFactories.get();
+        try (ElementSummaries elementSummaries = new ElementSummaries()) {
+            summaries = elementSummaries;
+            // first pass: collect the summary of all elements
+            try (InputStream is = getXMLStream(openInputFile(xmlFile), pyFileName)) {
+                collectSummary(new Events(inputFactory.createXMLStreamReader(is)));
+            }
+            stats.endPhase(ConversionStats.PARSE);
+            stats.setCounter(ConversionStats.ELEMENTS, summaries.size());
+            // second pass: transform
+            try (InputStream is = getXMLStream(openInputFile(xmlFile), pyFileName)) {
+                events = new Events(inputFactory.createXMLStreamReader(is));
+                writer = handler;
+                writer.startDocument();
+                id = 0;
+                moduleFound = false;
+                frames.clear();
+                if (events.next() == XMLStreamConstants.START_ELEMENT)
+                    copyNode(newNode(events.getName()), true);
+                transformChildren();
+                if (!moduleFound)
+                    throw new IllegalStateException("no Module element in " + xmlFile);
+                writer.endDocument();
+            }
+        } finally {
+            summaries = null;
+        }
+        stats.endPhase(ConversionStats.TRANSFORM);
+    }
+
+    /**
+     * first pass, for each element collect the lines of its text, the number of its child nodes,
+     * whether it has AST children and the names of its repeated non-AST children
+     * @param in : events of the input
+     * @throws XMLStreamException
+     */
+    private void collectSummary(Events in) throws XMLStreamException {
+        Deque<Summary> stack = new ArrayDeque<>();
+        int event;
+        while ((event = in.next()) != XMLStreamConstants.END_DOCUMENT) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = in.getName();
+                Summary parent = stack.peek();
+                if (parent != null) {
+                    ++parent.nbChildNodes;
+                    if (NodeRules.isAstLabel(name))
+                        parent.containsAstNode = true;
+                    else
+                        parent.countChild(name);
+                }
+                stack.push(new Summary(summaries.startElement()));
+            } else if (event == XMLStreamConstants.CHARACTERS) {
+                summaries.characters(in.getText());
+                if (!stack.isEmpty())
+                    ++stack.peek().nbChildNodes;
+            } else {
+                Summary closed = stack.pop();
+                summaries.setChildren(closed.index, closed.nbChildNodes, closed.containsAstNode,
+                        closed.getRepeatedChildren());
+                summaries.endElement();
+            }
+        }
+    }
+
+    /**
+     * read the children of the open elements until they are all closed, without recursion: each open element
+     * of the input is a frame on the stack, which says how its children are updated, so the depth of the tree
+     * is only limited by the heap
+     */
+    private void transformChildren() throws IOException, XMLStreamException {
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            int event = events.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                frames.pop();
+                endFrame(frame);
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                startChild(frame);
+            } else {
+                childText(frame, events.getText());
+            }
+        }
+    }
+
+    /**
+     * open an element of the input, its children are read by transformChildren
+     * @param mode : how the children are updated
+     * @param node : node of the element
+     * @param parent : parent given to its children
+     * @param nbEnds : number of output elements closed with it
+     * @return : the frame of the element
+     */
+    private Frame pushFrame(int mode, Node node, Node parent, int nbEnds){
+        Frame frame = new Frame(mode, node, parent, nbEnds);
+        frames.push(frame);
+        return frame;
+    }
+
+    /**
+     * a child element of a frame has been read
+     * @param frame : frame of its parent
+     */
+    private void startChild(Frame frame) throws IOException, XMLStreamException {
+        String name = events.getName();
+        switch (frame.mode) {
+            case COPY: {
+                Node child = newNode(name);
+                if(frame.findModule && !moduleFound && child.name == Labels.MODULE){
+                    moduleFound = true;
+                    updateNodes(child, frame.node);
+                }else{
+                    copyNode(child, frame.findModule);
+                }
+                break;
+            }
+            case LIST:
+                if(frame.node.name == Labels.BIN_OP && name != Labels.BIN_OP)
+                    name = Labels.OP;
+                if(!NodeRules.isAstLabel(name))
+                    // change to AST node
+                    name = rules.getAstLabel(name);
+                updateNodes(newNode(name), frame.parent);
+                break;
+            case BLOCK: {
+                Node child = newNode(name);
+                if(isAstNode(child))
+                    updateNodes(child, frame.parent);
+                else
+                    readNode(child, frame.others);
+                break;
+            }
+            case REPEATED:
+                if(frame.repeated.contains(name)){
+                    //change name
+                    name = Labels.intern(name + String.valueOf(frame.count));
+                    ++frame.count;
+                }
+                updateNodes(newNode(name), frame.node);
+                break;
+            case CHANGE_TO_AST:
+                changeToASTNode(frame.node);
+                break;
+            default:
+                updateNodes(newNode(name), frame.node);
+        }
+    }
+
+    /**
+     * a text child of a frame has been read
+     * @param frame : frame of its parent
+     * @param text : text
+     */
+    private void childText(Frame frame, String text) throws IOException, XMLStreamException {
+        switch (frame.mode) {
+            case COPY:
+                writer.characters(text);
+                break;
+            case LIST:
+            case BLOCK:
+                break;
+            case CHANGE_TO_AST:
+                // a text node is kept only if it has no sibling
+                if(frame.node.nbChildNodes == 1)
+                    writer.characters(text);
+                break;
+            default:
+                updateTextNode(text, frame.node);
+        }
+    }
+
+    /**
+     * the end of the element of a frame has been read
+     * @param frame : frame of the element
+     */
+    private void endFrame(Frame frame) throws IOException {
+        for(int i = 0; i < frame.nbEnds; ++i)
+            writer.endElement();
+        if(frame.mode == BLOCK){
+            // the non-AST children of body after Block
+            for(Object[] other : frame.others)
+                writeEvent(other);
+            writer.endElement();
+        }
+    }
+
+    /**
+     * update a node, the start event of the node has been read, its children are read by transformChildren
+     * @param node : current node
+     * @param parent : parent of the node
+     */
+    private void updateNodes(Node node, Node parent) throws IOException, XMLStreamException {
+        NodeRules.Rule rule = rules.get(node.name);
+        //ignore manually added tags
+        if(rule == NodeRules.Rule.IGNORE){
+            copyNode(node, false);
+            return;
+        }
+
+        //update attributes for this node
+        updateAttribute(node);
+        //increase node ID
+        ++id;
+
+        switch (rule) {
+            //special cases: if node is ClassDef or FunctionDef, then add an intermediate tag "name"
+            case DECLARATION:
+                Node nameDef = addNameTemp(node);
+                ++node.nbChildNodes;
+                updateChildren(node, nameDef);
+                break;
+            //special cases: cmpop node
+            case OPERATOR:
+                treatCmpopNode(node);
+                break;
+            case BODY:
+                // increase line to lineNr + 1
+                increaseLineNr(node, parent);
+                // add Block to body
+                addBlockStatements(node);
+                break;
+            default:
+                updateChildren(node, null);
+        }
+    }
+
+    /**
+     * update a node from the kinds of its children collected by the first pass
+     * @param node : current node
+     * @param nameDef : nameDef added to the node, or null
+     */
+    private void updateChildren(Node node, Node nameDef) throws IOException, XMLStreamException {
+        boolean astNode = isAstNode(node);
+        boolean containsAstNode = summaries.containsAstNode(node.index);
+        //case 1
+        if(astNode && containsAstNode){
+            if(nameDef != null)
+                throw new IllegalStateException(node.name + " at line " + node.line + " contains an AST node");
+            addInterNode(node);
+        }else{
+            writeStartNode(node);
+            writeNodes(nameDef);
+            //case 2
+            if(astNode && summaries.getRepeatedChildren(node.index) != null){
+                treatRepeatedChildren(node);
+            }else {
+                //case 3
+                if(!astNode && !containsAstNode){
+                    pushFrame(CHANGE_TO_AST, node, node, 1);
+                }else{
+                    //read children of the current node
+                    pushFrame(UPDATE_CHILDREN, node, node, 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * update a text node which is a child of a node
+     * @param leaf : text
+     * @param parent : parent node
+     */
+    private void updateTextNode(String leaf, Node parent) throws IOException, XMLStreamException {
+        if(leaf.trim().isEmpty()){
+            writer.characters(leaf);
+        }else{
+            //if this leaf (node) has a sibling it means that it is not a unique leaf of an XML tag
+            if(parent.nbChildNodes == 1){
+                // if its parent is an AST node we need to add and an additional "identifier"
+                if(isAstNode(parent))
+                    writeNodes(addIdentifier(parent, leaf));
+                else
+                    writer.characters(leaf);
+            }
+        }
+    }
+
+    /**
+     * calculate line number for body node
+     * @param node : body
+     * @param parent : parent of body
+     */
+    private void increaseLineNr(Node node, Node parent) {
+        // get begin and end line numbers
+        int lineNr = getPosition(parent, LINE_NR);
+        int endLineNr = getPosition(parent, END_LINE_NR);
+        // if the code has more than 1 line
+        if(lineNr < endLineNr)
+            // recalculate begin line number
+            lineNr = getPosition(node, LINE_NR) + 1;
+        // update line number attributes
+        setPosition(node, LINE_NR, lineNr);
+        setPosition(node, END_LINE_NR, endLineNr);
+    }
+
+    /**
+     * updata attributes of a node
+     * @param node : input node
+     */
+    private void updateAttribute(Node node) {
+        //update ID for internal node
+        setPosition(node, ID, id);
+        //find line and column numbers
+        int[] LCNumbers = columnFinder.findLineColNumbers(node.line,
+                summaries.getNbLines(node.index), summaries.getText(node.index));
+        setPositions(node, LCNumbers);
+    }
+
+    /**
+     * change a non-AST child of a node to AST node, the start event of the child has been read
+     * @param node : input node
+     */
+    private void changeToASTNode(Node node) throws IOException, XMLStreamException {
+        // change to AST node
+        Node child = newNode(rules.getAstLabel(events.getName()));
+        // if this node contain an element the continue update this node
+        if(child.nbChildNodes > 1){
+            updateNodes(child, node);
+        }else{
+            // update attribute for this node
+            updateAttribute(child);
+            ++id;
+            // add an identifier node to this node
+            Node identifier = addIdentifier(child, readTextContent());
+            writeStartNode(child);
+            writeNodes(identifier);
+            writer.endElement();
+        }
+    }
+
+    /**
+     * add an intermediate node list* to a node and update its children
+     * @param node : node
+     */
+    private void addInterNode(Node node) throws IOException {
+        //add intermediate node
+        Node interNode = addIntermediateNode(node, rules.getListLabel(node.name));
+        writeStartNode(node);
+        writeStartNode(interNode);
+        //read children of the intermediate node, the children of BinOp are changed to Op
+        pushFrame(LIST, node, interNode, 2);
+    }
+
+    /**
+     * add Block -> statements to body, the non-AST children stay in body after Block
+     * @param node : input node ~ body
+     */
+    private void addBlockStatements(Node node) throws IOException {
+        //add Block as the first child of this node
+        Node block = addIntermediateNode(node, Labels.BLOCK);
+        //add statements to Block
+        Node statements = addIntermediateNode(block, Labels.STATEMENTS);
+        writeStartNode(node);
+        writeStartNode(block);
+        writeStartNode(statements);
+        //update all AST children, keep the others for later
+        pushFrame(BLOCK, node, statements, 2).others = new ArrayList<>();
+    }
+
+    /**
+     * if node has repeated attribute then for each attribute we add an InterAstNode and then add identifier to this
+     * InterAstNode
+     * @param node : node has repeated children
+     */
+    private void treatRepeatedChildren(Node node) {
+        //change name for each child if it is in repeated list
+        pushFrame(REPEATED, node, node, 1).repeated = summaries.getRepeatedChildren(node.index);
+    }
+
+    /**
+     * add intermediate node Name to cmpop node
+     * @param node : cmpop node
+     */
+    private void treatCmpopNode(Node node) throws IOException, XMLStreamException {
+        //store compare operator
+        String identifier = readTextContent();
+        //add intermediate Name
+        Node name = addIntermediateNode(node, Labels.NAME);
+        //add identifier to Name
+        name.children.add(addIdentifier(name, identifier));
+        writeStartNode(node);
+        writeNodes(name);
+        writer.endElement();
+    }
+
+    /**
+     * return true if the first letter is Upper case (AST node)
+     * @param node
+     * @return : true if node is an AST node
+     */
+    private boolean isAstNode(Node node){
+        return NodeRules.isAstLabel(node.name);
+    }
+
+    /**
+     * create an intermediate node having the positions of a node
+     * @param node : xml node
+     * @param tagName : intermediate node name
+     */
+    private Node addIntermediateNode(Node node, String tagName){
+        Node inter_child = new Node(tagName);
+        setPosition(inter_child, ID, id);
+        stats.count(ConversionStats.INTERMEDIATE_NODES);
+        copyPositions(node, inter_child);
+        //increase node ID
+        ++id;
+        return inter_child;
+    }
+
+    /**
+     * create an identifier of a node
+     * @param node : node
+     * @param identifier : identifier
+     */
+    private Node addIdentifier(Node node, String identifier){
+        identifier = Labels.internText(identifier);
+        //collect variable name
+        columnFinder.collectLinesVariables(getPosition(node, LINE_NR), identifier.trim());
+
+        Node iden_child = new Node(Labels.IDENTIFIER);
+        stats.count(ConversionStats.IDENTIFIERS);
+        setPosition(iden_child, ID, id);
+        iden_child.text = identifier;
+        copyPositions(node, iden_child);
+        //increase node ID
+        ++id;
+        return iden_child;
+    }
+
+    /**
+     * create tag Name of a class or method declaration
+     * @param node : class or method node
+     * @return : the new nameDef node
+     */
+    private Node addNameTemp(Node node) {
+        Node name_child = new Node(Labels.NAME_DEF);
+        stats.count(ConversionStats.INTERMEDIATE_NODES);
+        setPosition(name_child, ID, id);
+
+        String val = node.attributes.containsKey(Labels.NAME_ATTRIBUTE) ? node.attributes.get(Labels.NAME_ATTRIBUTE) : "";
+        name_child.attributes.put(Labels.NAME_ATTRIBUTE, val);
+
+        // find line and column numbers
+        setPositions(name_child, columnFinder.findLineColNumbers(node.line, val));
+        //increase node ID
+        ++id;
+
+        //add Name
+        Node name = addIntermediateNode(name_child, "Name");
+        name_child.children.add(name);
+        //add identifier
+        name.children.add(addIdentifier(name, val));
+        return name_child;
+    }
+
+    private void setPositions(Node node, int[] LCNumbers){
+        setPosition(node, LINE_NR, LCNumbers[0]);
+        setPosition(node, END_LINE_NR, LCNumbers[1]);
+        setPosition(node, COL_NR, LCNumbers[2]);
+        setPosition(node, END_COL_NR, LCNumbers[3]);
+    }
+
+    /**
+     * copy the positions LineNr, EndLineNr, ColNr and EndColNr of a node to another node,
+     * a position which is not set is copied as an attribute
+     */
+    private void copyPositions(Node from, Node to){
+        for(int position = LINE_NR; position <= END_COL_NR; ++position){
+            if((from.positionMask & (1 << position)) != 0)
+                setPosition(to, position, from.positions[position]);
+            else
+                to.attributes.put(POSITION_NAMES[position], from.attributes.get(POSITION_NAMES[position]));
+        }
+    }
+
+    /**
+     * @param position : ID, LINE_NR, END_LINE_NR, COL_NR or END_COL_NR of CompactTree
+     */
+    private static void setPosition(Node node, int position, int value){
+        node.attributes.remove(POSITION_NAMES[position]);
+        node.positions[position] = value;
+        node.positionMask |= 1 << position;
+    }
+
+    /**
+     * @param position : ID, LINE_NR, END_LINE_NR, COL_NR or END_COL_NR of CompactTree
+     * @return : value of the position, or of the attribute of the input having its name
+     */
+    private static int getPosition(Node node, int position){
+        if((node.positionMask & (1 << position)) != 0)
+            return node.positions[position];
+        return Integer.valueOf(node.attributes.get(POSITION_NAMES[position]));
+    }
+
+    /**
+     * create the node of the element just read, with its original attributes
+     * @param name : current name of the node
+     * @return : node
+     */
+    private Node newNode(String name){
+        Node node = new Node(name);
+        if(events.getIndex() >= 0){
+            node.index = events.getIndex();
+            node.line = events.getLineNumber();
+            node.nbChildNodes = summaries.getNbChildNodes(node.index);
+            // the next nodes are not on the lines before this one
+            columnFinder.releaseLinesBefore(node.line);
+            events.getAttributes(node.attributes);
+        }
+        return node;
+    }
+
+    /**
+     * copy a node without changing it, if needed the first Module node is transformed
+     * @param node : node
+     * @param findModule : look for the Module node in the subtree
+     */
+    private void copyNode(Node node, boolean findModule) throws IOException {
+        writeStartNode(node);
+        pushFrame(COPY, node, node, 1).findModule = findModule;
+    }
+
+    /**
+     * read a node without changing it and keep its events
+     * @param node : node
+     * @param output : list of events
+     */
+    private void readNode(Node node, List<Object[]> output) throws XMLStreamException {
+        output.add(new Object[]{node.name, node.attributes});
+        int depth = 0;
+        int event;
+        while ((event = events.next()) != XMLStreamConstants.END_ELEMENT || depth > 0) {
+            if(event == XMLStreamConstants.START_ELEMENT){
+                Node child = newNode(events.getName());
+                output.add(new Object[]{child.name, child.attributes});
+                ++depth;
+            }else if(event == XMLStreamConstants.END_ELEMENT){
+                output.add(new Object[0]);
+                --depth;
+            }else{
+                output.add(new Object[]{events.getText()});
+            }
+        }
+        output.add(new Object[0]);
+    }
+
+    /**
+     * @return : text content of the rest of the current node
+     */
+    private String readTextContent() throws XMLStreamException {
+        StringBuilder sb = new StringBuilder();
+        int depth = 0;
+        int event;
+        while ((event = events.next()) != XMLStreamConstants.END_ELEMENT || depth > 0) {
+            if(event == XMLStreamConstants.START_ELEMENT)
+                ++depth;
+            else if(event == XMLStreamConstants.END_ELEMENT)
+                --depth;
+            else
+                sb.append(events.getText());
+        }
+        return sb.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeEvent(Object[] event) throws IOException {
+        if(event.length == 2)
+            writeStartElement((String) event[0], (Map<String, String>) event[1]);
+        else if(event.length == 1)
+            writer.characters((String) event[0]);
+        else
+            writer.endElement();
+    }
+
+    /**
+     * write the start of a node, its positions and its other attributes in the order of their names
+     */
+    private void writeStartNode(Node node) throws IOException {
+        writer.startElement(node.name);
+        Iterator<Map.Entry<String, String>> others = node.attributes.entrySet().iterator();
+        Map.Entry<String, String> other = others.hasNext() ? others.next() : null;
+        for(int position : SORTED_POSITIONS){
+            if((node.positionMask & (1 << position)) == 0)
+                continue;
+            String name = POSITION_NAMES[position];
+            while(other != null && other.getKey().compareTo(name) < 0){
+                writer.attribute(other.getKey(), other.getValue());
+                other = others.hasNext() ? others.next() : null;
+            }
+            writer.position(name, node.positions[position]);
+        }
+        while(other != null){
+            writer.attribute(other.getKey(), other.getValue());
+            other = others.hasNext() ? others.next() : null;
+        }
+    }
+
+    private void writeStartElement(String name, Map<String, String> attributes) throws IOException {
+        writer.startElement(name);
+        for(Map.Entry<String, String> attribute : attributes.entrySet())
+            writer.attribute(attribute.getKey(), attribute.getValue());
+    }
+
+    /**
+     * write a node created by the transformation and its children
+     * @param node : node, may be null
+     */
+    private void writeNodes(Node node) throws IOException {
+        if(node == null)
+            return;
+        writeStartNode(node);
+        if(node.text != null)
+            writer.characters(node.text);
+        for(Node child : node.children)
+            writeNodes(child);
+        writer.endElement();
+    }
+
+    /**
+     * a node of the output, the attributes are sorted like in a DOM.
+     * The positions set by the transformation are ints, the other attributes are strings
+     */
+    private static class Node {
+        String name;
+        int index = -1;
+        int line;
+        int nbChildNodes;
+        Map<String, String> attributes = new TreeMap<>();
+        // bit i is set if position i of CompactTree is given
+        int positionMask;
+        int[] positions = new int[POSITION_NAMES.length];
+        // content of the nodes created by the transformation
+        String text;
+        List<Node> children = new ArrayList<>(1);
+
+        Node(String name){
+            this.name = name;
+        }
+    }
+
+    /**
+     * an open element of the input during the second pass
+     */
+    private static class Frame {
+        final int mode;
+        final Node node;
+        // parent given to the children
+        final Node parent;
+        // output elements closed with the element
+        final int nbEnds;
+        // COPY: look for the Module node in the subtree
+        boolean findModule;
+        // REPEATED: names of the repeated children and number of the next one
+        Set<String> repeated;
+        int count = 1;
+        // BLOCK: events of the non-AST children
+        List<Object[]> others;
+
+        Frame(int mode, Node node, Node parent, int nbEnds){
+            this.mode = mode;
+            this.node = node;
+            this.parent = parent;
+            this.nbEnds = nbEnds;
+        }
+    }
+
+    /**
+     * children of an element seen by the first pass
+     */
+    private static class Summary {
+        int index;
+        int nbChildNodes;
+        boolean containsAstNode;
+        String firstName;
+        Map<String, Integer> names;
+
+        Summary(int index){
+            this.index = index;
+        }
+
+        void countChild(String name){
+            if(firstName == null){
+                firstName = name;
+                return;
+            }
+            if(names == null){
+                names = new HashMap<>();
+                names.put(firstName, 1);
+            }
+            names.merge(name, 1, Integer::sum);
+        }
+
+        Set<String> getRepeatedChildren(){
+            if(names == null)
+                return Collections.emptySet();
+            Set<String> repeated = new HashSet<>();
+            for(Map.Entry<String, Integer> entry : names.entrySet())
+                if(entry.getValue() > 1)
+                    repeated.add(entry.getKey());
+            return repeated;
+        }
+    }
+
+    /**
+     * events of the input as seen by a DOM: consecutive characters are merged into one text
+     * and comments and processing instructions are skipped
+     */
+    private static class Events {
+        private XMLStreamReader reader;
+        private boolean pending = false;
+        private String text;
+        private int index = -1;
+
+        Events(XMLStreamReader reader){
+            this.reader = reader;
+        }
+
+        /**
+         * @return : START_ELEMENT, END_ELEMENT, CHARACTERS or END_DOCUMENT
+         */
+        int next() throws XMLStreamException {
+            StringBuilder sb = null;
+            while (true) {
+                int event = pending ? reader.getEventType() : reader.next();
+                pending = false;
+                switch (event) {
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (sb == null)
+                            sb = new StringBuilder();
+                        sb.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        break;
+                    case XMLStreamConstants.START_ELEMENT:
+                    case XMLStreamConstants.END_ELEMENT:
+                    case XMLStreamConstants.END_DOCUMENT:
+                        if (sb != null && sb.length() > 0) {
+                            pending = true;
+                            text = Labels.internText(sb.toString());
+                            return XMLStreamConstants.CHARACTERS;
+                        }
+                        if (event == XMLStreamConstants.START_ELEMENT)
+                            ++index;
+                        return event;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        String getName(){
+            return Labels.intern(reader.getLocalName());
+        }
+
+        String getText(){
+            return text;
+        }
+
+        int getIndex(){
+            return index;
+        }
+
+        int getLineNumber(){
+            return reader.getLocation().getLineNumber();
+        }
+
+        void getAttributes(Map<String, String> attributes){
+            for (int i = 0; i < reader.getAttributeCount(); ++i)
+                attributes.put(Labels.intern(reader.getAttributeLocalName(i)), Labels.internText(reader.getAttributeValue(i)));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package be.intimals.pythonConverter;
+
+import java.util.Arrays;
+
+/**
+ * Number of lines and text of the trimmed text content of every element of a document.
+ * Elements are numbered in document order and the events of the document are given in one pass.
+ * The text of the document is kept once: an element only keeps the positions of its first and last
+ * non white space characters, and its text is taken from them when it is asked for, if it has a single line.
+ */
+public class TextSpans {
+    // results per element: number of lines, positions of the first and last characters of the text
+    private int[] nbLines = new int[64];
+    private int[] firstPositions = new int[64];
+    private int[] lastPositions = new int[64];
+    private int nbElements = 0;
+    // text of the document
+    private StringBuilder content = new StringBuilder();
+
+    // open elements
+    private int[] openIndex = new int[16];
+    private long[] openFirstPos = new long[16];
+    private int[] openFirstNl = new int[16];
+    private int depth = 0;
+    // open elements from this depth have not seen a non white space character yet
+    private int pendingFrom = 0;
+
+    // text read so far
+    private long pos = 0;
+    private int nl = 0;
+    private long lastPos = -1;
+    private int lastNl = 0;
+
+    /**
+     * start a new element
+     * @return : index of the element
+     */
+    public int startElement(){
+        if(depth == openIndex.length){
+            openIndex = Arrays.copyOf(openIndex, depth * 2);
+            openFirstPos = Arrays.copyOf(openFirstPos, depth * 2);
+            openFirstNl = Arrays.copyOf(openFirstNl, depth * 2);
+        }
+        openIndex[depth] = nbElements;
+        openFirstPos[depth] = -1;
+        if(pendingFrom > depth)
+            pendingFrom = depth;
+        ++depth;
+        return nbElements++;
+    }
+
+    /**
+     * add text to the open elements
+     */
+    public void characters(char[] ch, int start, int length){
+        addContent(ch, start, length);
+        for(int i = start; i < start + length; ++i){
+            char c = ch[i];
+            if(c > ' '){
+                // first character of the open elements
+                for(int k = pendingFrom; k < depth; ++k){
+                    openFirstPos[k] = pos;
+                    openFirstNl[k] = nl;
+                }
+                pendingFrom = depth;
+                lastPos = pos;
+                lastNl = nl;
+            }else if(c == '\n'){
+                ++nl;
+            }
+            ++pos;
+        }
+    }
+
+    public void characters(String text){
+        characters(text.toCharArray(), 0, text.length());
+    }
+
+    /**
+     * close the current element
+     */
+    public void endElement(){
+        --depth;
+        int element = openIndex[depth];
+        if(openFirstPos[depth] < 0){
+            //empty text
+            setSpan(element, 1, 0, -1);
+        }else{
+            setSpan(element, lastNl - openFirstNl[depth] + 1, openFirstPos[depth], lastPos);
+        }
+        if(pendingFrom > depth)
+            pendingFrom = depth;
+    }
+
+    /**
+     * keep the text of the document
+     */
+    protected void addContent(char[] ch, int start, int length){
+        content.append(ch, start, length);
+    }
+
+    /**
+     * keep the span of an element
+     * @param element : index of the element
+     * @param nbLines : number of lines of its trimmed text
+     * @param first : position of the first character of the trimmed text in the document
+     * @param last : position of its last character, first - 1 if the text is empty
+     */
+    protected void setSpan(int element, int nbLines, long first, long last){
+        if(element >= this.nbLines.length){
+            int size = Math.max(element + 1, this.nbLines.length * 2);
+            this.nbLines = Arrays.copyOf(this.nbLines, size);
+            firstPositions = Arrays.copyOf(firstPositions, size);
+            lastPositions = Arrays.copyOf(lastPositions, size);
+        }
+        this.nbLines[element] = nbLines;
+        firstPositions[element] = (int) first;
+        lastPositions[element] = (int) last;
+    }
+
+    /**
+     * @param element : index of an element
+     * @return : number of lines of the trimmed text of the element
+     */
+    public int getNbLines(int element){
+        return nbLines[element];
+    }
+
+    /**
+     * @param element : index of an element
+     * @return : trimmed text of the element if it has a single line, otherwise null
+     */
+    public String getText(int element){
+        if(nbLines[element] != 1)
+            return null;
+        return content.substring(firstPositions[element], lastPositions[element] + 1);
+    }
+
+    public int size(){
+        return nbElements;
+    }
+}
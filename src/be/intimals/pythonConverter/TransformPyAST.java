@@ -1,264 +1,955 @@
 package be.intimals.pythonConverter;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.w3c.dom.*;
-
+import static be.intimals.pythonConverter.CompactTree.NONE;
 import static be.intimals.pythonConverter.Utils.*;
-import static java.lang.Character.isUpperCase;
 
 public class TransformPyAST {
     private int id;
-    private Document document;
-    private List<String> pyFileContent;
+    private CompactTree tree;
+    private PyColumnFinder columnFinder;
+    private TextSpans textSpans;
+    private NodeRules rules = NodeRules.DEFAULT;
+    // kinds of the children of a node
+    private static final int CONTAIN_AST_NODE = 1;
+    private static final int REPEATED_CHILDREN = 2;
+    // names of the non-AST children of the last classified node, and those which are repeated
+    private String[] childNames = new String[8];
+    private String[] repeatedNames = new String[4];
+    private int nbRepeatedNames = 0;
+    // children to update: next child and mode of each level
+    private static final int UPDATE_CHILDREN = 0;
+    private static final int UPDATE_LIST_CHILDREN = 1;
+    private static final int CHANGE_TO_AST = 2;
+    private int[] stackChildren = new int[64];
+    private int[] stackModes = new int[64];
+    private int depth = 0;
+    private ConversionStats stats = new ConversionStats(null);
     private String output;
 
-    private static String ID = "ID";
-    private static String LineNr = "LineNr";
-    private static String EndLineNr = "EndLineNr";
-    private static String ColNr = "ColNr";
-    private static String EndColNr = "EndColNr";
+    private int nbThreads = 1;
+    private boolean streaming = false;
+    private boolean incremental = false;
+    private ConversionManifest manifest;
+    private Map<String, String> hashes;
+    private String reportFile;
+    private ConversionReport report;
+    private boolean bundled = false;
+    private OutputBundle bundle;
+    private OutputBundle.Part bundlePart;
+    private boolean binary = false;
+    // level of the gzip outputs, UNCOMPRESSED for plain files
+    private int gzipLevel = UNCOMPRESSED;
+    private boolean gzippedPy = false;
+    private boolean pythonSources = false;
+    // heap shared by the files transformed at the same time, by all the jobs of the JVM
+    private static MemoryBudget memoryBudget = MemoryBudget.ofMaxHeap();
+    // estimated memory of the files waiting for a worker thread, so that they are not read again
+    private Map<String, Long> memoryEstimates = new ConcurrentHashMap<>();
+    private boolean journaled = false;
+    private boolean resuming = false;
+    private ConversionJournal journal;
+    private boolean watching = false;
+    // error of a file which could not be converted
+    private String failure;
+    // files of the run which could not be converted, and the error which stopped the run
+    private AtomicInteger nbFailedFiles = new AtomicInteger();
+    private String runFailure;
+
+    public TransformPyAST(){
+    }
+
+    /**
+     * create the conversion context of one file
+     * @param outputDir : directory contains xml files for freqtals
+     */
+    private TransformPyAST(String outputDir, NodeRules rules, boolean streaming, boolean binary, boolean pythonSources){
+        this.output = outputDir;
+        this.rules = rules;
+        this.streaming = streaming;
+        this.binary = binary;
+        this.pythonSources = pythonSources;
+    }
+
+    /**
+     * set the number of files transformed at the same time
+     * @param nbThreads : number of worker threads, 1 transforms files sequentially
+     */
+    public void setNbThreads(int nbThreads){
+        this.nbThreads = Math.max(1, nbThreads);
+    }
+
+    /**
+     * read the input XMLs as streams of events instead of building trees in memory
+     * @param streaming : true to use StreamTransformPyAST
+     */
+    public void setStreaming(boolean streaming){
+        this.streaming = streaming;
+    }
 
-    private Map<Integer, List<String>> linesVariables;
+    /**
+     * only transform the files which changed since the last run,
+     * the hashes of the converted files are kept in a manifest in the output directory
+     * @param incremental : true to skip the unchanged files
+     */
+    public void setIncremental(boolean incremental){
+        this.incremental = incremental;
+    }
+
+    /**
+     * write the time, allocated bytes and counters of each phase of each file to a JSON report
+     * @param reportFile : JSON file, null for no report
+     */
+    public void setReport(String reportFile){
+        this.reportFile = reportFile;
+    }
+
+    /**
+     * write the outputs to a few bundle files with an index instead of one file per output
+     * @param bundled : true to write bundle files
+     */
+    public void setBundled(boolean bundled){
+        this.bundled = bundled;
+    }
+
+    /**
+     * also write each converted tree in the binary format of BinaryTreeWriter, NAME.tree next to NAME.xml
+     * @param binary : true to write the binary trees
+     */
+    public void setBinary(boolean binary){
+        this.binary = binary;
+    }
+
+    /**
+     * compress the output XML files with gzip, NAME.xml.gz instead of NAME.xml
+     * @param gzipLevel : level of the deflater from 0 (fastest) to 9 (smallest), UNCOMPRESSED for plain files
+     * @param gzippedPy : true to also compress the copied python files, NAME.py.gz
+     */
+    public void setGzip(int gzipLevel, boolean gzippedPy){
+        this.gzipLevel = gzipLevel;
+        this.gzippedPy = gzippedPy;
+    }
+
+    /**
+     * @param rules : rules of the transformation of the elements, the default rules give the INTIMALS format
+     */
+    public void setRules(NodeRules rules){
+        this.rules = rules;
+    }
+
+    /**
+     * parse the Python files with PySourceParser instead of reading the XMLs exported by pyRegurgitator
+     * @param pythonSources : true to convert the Python files of the source directory
+     */
+    public void setPythonSources(boolean pythonSources){
+        this.pythonSources = pythonSources;
+    }
+
+    /**
+     * write the outcome of each file to a journal in the output directory
+     * @param journaled : true to write the journal
+     */
+    public void setJournaled(boolean journaled){
+        this.journaled = journaled;
+    }
+
+    /**
+     * continue the run recorded in the journal of the output directory:
+     * the files converted by the previous runs are not transformed again
+     * @param resuming : true to resume
+     */
+    public void setResuming(boolean resuming){
+        this.resuming = resuming;
+    }
 
     /**
      * transform all Python XMLs to Intimals XML
      * @param dir : directory contains xml files exported by ...
      * @param outputDir : directory contains xml files for freqtals
+     * @return : number of files which could not be converted
      */
-    public void transformPyAST(String dir, String outputDir){
+    public int transformPyAST(String dir, String outputDir){
+        nbFailedFiles.set(0);
+        runFailure = null;
         try {
+            if(!new File(dir).isDirectory())
+                throw new FileNotFoundException(dir + " is not a directory");
             output = outputDir;
+            if(reportFile != null)
+                report = new ConversionReport(nbThreads);
+            if(bundled)
+                bundle = new OutputBundle(outputDir);
             ArrayList<String> files = new ArrayList<>();
-            populateFileList(new File(dir), files);
+            if(pythonSources)
+                populatePythonFileList(new File(dir), files);
+            else
+                populateFileList(new File(dir), files);
             Collections.sort(files);
-            for (String fi : files) {
-                System.out.println("Transforming file: "+fi);
-                transformOneAST(fi);
+            if(journaled || resuming)
+                journal = new ConversionJournal(dir, outputDir, resuming);
+            if(incremental){
+                ArrayList<String> changedFiles = selectChangedFiles(dir, files);
+                if(journal != null)
+                    recordSkippedFiles(files, changedFiles);
+                files = changedFiles;
             }
+            if(resuming)
+                files = selectUnfinishedFiles(files);
+            if(nbThreads == 1){
+                for (String fi : files) {
+                    transformFile(fi);
+                }
+            }else{
+                transformParallel(groupByOutputFile(files));
+            }
+            if(bundle != null)
+                bundle.close();
+            if(manifest != null)
+                manifest.save();
+            if(report != null)
+                report.write(reportFile);
+            if(journal != null)
+                System.out.println("Transformed files: " + journal.getSummary());
         }catch (Exception e){
             System.out.println("Transforming python XML error");
             e.printStackTrace();
+            runFailure = e.toString();
+        }finally {
+            // a watching run keeps recording the files it transforms
+            if(journal != null && !watching)
+                closeJournal();
+        }
+        return nbFailedFiles.get();
+    }
+
+    /**
+     * @return : the error which stopped the last run before all its files were transformed, null if there is none
+     */
+    public String getRunFailure(){
+        return runFailure;
+    }
+
+    private void closeJournal(){
+        try {
+            journal.close();
+        }catch (IOException e){
+            System.out.println("Write journal error " + e);
+        }
+    }
+
+    /**
+     * transform all Python XMLs, then keep watching the directory and transform the new and modified files
+     * when they have not changed for a delay, until the process is stopped
+     * @param dir : directory contains xml files exported by ...
+     * @param outputDir : directory contains xml files for freqtals
+     * @param delay : milliseconds without changes before a file is transformed
+     */
+    public void watchPyAST(String dir, String outputDir, long delay){
+        try {
+            // register the directories before listing the files so that no change is missed
+            SourceWatcher watcher = new SourceWatcher(dir, delay);
+            watching = true;
+            transformPyAST(dir, outputDir);
+            System.out.println("Watching directory: "+dir);
+            if(hashes == null)
+                hashes = new HashMap<>();
+            watcher.watch(fi -> {
+                try {
+                    if(manifest != null){
+                        String hash = ConversionManifest.hash(fi, getOutputOptions());
+                        if(manifest.isUnchanged(fi, hash))
+                            return;
+                        hashes.put(fi, hash);
+                    }
+                    transformFile(fi);
+                    if(manifest != null)
+                        manifest.save();
+                    if(report != null)
+                        report.write(reportFile);
+                }catch (IOException e){
+                    System.out.println("Transforming python XML error " + e);
+                }
+            });
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch (Exception e){
+            System.out.println("Watching python XML error");
+            e.printStackTrace();
+        }finally {
+            if(journal != null)
+                closeJournal();
+        }
+    }
+
+    /**
+     * transform groups of files on a pool of worker threads, the groups having the largest files first
+     * so that the last files to finish are small, each file gets its own conversion context
+     * and waits until its estimated memory fits in the heap
+     * @param groups : files grouped by output file name
+     * @throws InterruptedException
+     */
+    private void transformParallel(Collection<List<String>> groups) throws InterruptedException {
+        Map<List<String>, Long> largestFiles = new IdentityHashMap<>();
+        for (List<String> group : groups) {
+            long largest = 0;
+            for (String fi : group) {
+                long memory = MemoryBudget.estimate(fi, streaming);
+                memoryEstimates.put(fi, memory);
+                largest = Math.max(largest, memory);
+            }
+            largestFiles.put(group, largest);
+        }
+        List<List<String>> largestFirst = new ArrayList<>(groups);
+        largestFirst.sort((a, b) -> Long.compare(largestFiles.get(b), largestFiles.get(a)));
+
+        ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+        for (List<String> group : largestFirst) {
+            pool.execute(() -> {
+                for (String fi : group) {
+                    transformFile(fi);
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * files from different sub-directories may be written to the same output file,
+     * they are kept in one group so that they are transformed in the sequential order
+     * @param files : sorted input files
+     * @return : groups of files having the same output file name
+     */
+    private Collection<List<String>> groupByOutputFile(List<String> files){
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (String fi : files) {
+            groups.computeIfAbsent(getOutputName(fi), k -> new ArrayList<>()).add(fi);
+        }
+        return groups.values();
+    }
+
+    /**
+     * @param xmlFile : input xml file, NAME.xml or NAME.xml.gz
+     * @return : name of the output file, NAME.xml
+     */
+    private String getOutputName(String xmlFile){
+        return Paths.get(stripGzipSuffix(xmlFile)).getFileName().toString();
+    }
+
+    /**
+     * keep the files which changed since the last run and remove the outputs of the deleted files,
+     * a file is transformed again if another file having the same output file changed
+     * @param dir : directory contains xml files exported by ...
+     * @param files : sorted input files
+     * @return : sorted files to transform
+     * @throws IOException
+     */
+    private ArrayList<String> selectChangedFiles(String dir, ArrayList<String> files) throws IOException {
+        manifest = new ConversionManifest(dir, output);
+        hashes = new HashMap<>();
+        Set<String> currentFiles = new HashSet<>();
+        Set<String> outputNames = new HashSet<>();
+        for (String fi : files) {
+            hashes.put(fi, ConversionManifest.hash(fi, getOutputOptions()));
+            currentFiles.add(Paths.get(fi).toAbsolutePath().normalize().toString());
+            outputNames.add(getOutputName(fi));
+        }
+        Set<String> changedOutputs = new HashSet<>();
+        // deleted files
+        for (String fi : manifest.getFiles()) {
+            if(!currentFiles.contains(fi)){
+                manifest.remove(fi);
+                String outputName = getOutputName(fi);
+                if(outputNames.contains(outputName)) {
+                    changedOutputs.add(outputName);
+                }else {
+                    System.out.println("Removing output of deleted file: " + fi);
+                    deleteOutputs(outputName, false);
+                }
+            }
+        }
+        // new and modified files, and all the files if the output options changed
+        for (String fi : files) {
+            String outputName = getOutputName(fi);
+            if(!manifest.isUnchanged(fi, hashes.get(fi)) || !new File(output, getXmlOutputName(outputName)).exists())
+                changedOutputs.add(outputName);
+        }
+        // the outputs written with other options, such as NAME.xml when NAME.xml.gz is written, would be left
+        if(bundle == null){
+            for (String outputName : changedOutputs)
+                deleteOutputs(outputName, true);
+        }
+        ArrayList<String> changedFiles = new ArrayList<>();
+        for (String fi : files) {
+            if(changedOutputs.contains(getOutputName(fi)))
+                changedFiles.add(fi);
+        }
+        System.out.println("Unchanged files: " + (files.size() - changedFiles.size()));
+        return changedFiles;
+    }
+
+    /**
+     * @return : the options which change the output files, a file converted with other options is converted again
+     */
+    private String getOutputOptions(){
+        return "binary=" + binary + " gzip=" + gzipLevel + " gzipPy=" + gzippedPy + " python=" + pythonSources;
+    }
+
+    /**
+     * keep the files which were not finished by the previous runs of the journal,
+     * a file is transformed again if another file having the same output file is not finished
+     * @param files : sorted input files
+     * @return : sorted files to transform
+     */
+    private ArrayList<String> selectUnfinishedFiles(ArrayList<String> files){
+        Set<String> unfinishedOutputs = new HashSet<>();
+        for (String fi : files) {
+            if(!journal.isFinished(fi))
+                unfinishedOutputs.add(getOutputName(fi));
+        }
+        ArrayList<String> unfinishedFiles = new ArrayList<>();
+        for (String fi : files) {
+            if(unfinishedOutputs.contains(getOutputName(fi)))
+                unfinishedFiles.add(fi);
+        }
+        System.out.println("Finished files: " + (files.size() - unfinishedFiles.size()));
+        return unfinishedFiles;
+    }
+
+    /**
+     * record in the journal the files which are not transformed because they did not change
+     * @param files : input files
+     * @param changedFiles : files to transform
+     * @throws IOException
+     */
+    private void recordSkippedFiles(List<String> files, List<String> changedFiles) throws IOException {
+        Set<String> changed = new HashSet<>(changedFiles);
+        for (String fi : files) {
+            if(!changed.contains(fi))
+                journal.skipped(fi);
+        }
+    }
+
+    /**
+     * transform a file in its own conversion context and record it in the manifest and in the journal,
+     * an error only stops the transformation of this file
+     * @param xmlFile : input xml file
+     */
+    private void transformFile(String xmlFile){
+        System.out.println("Transforming file: "+xmlFile);
+        TransformPyAST converter = new TransformPyAST(output, rules, streaming, binary, pythonSources);
+        boolean done = false;
+        Long estimate = memoryEstimates.remove(xmlFile);
+        long memory = estimate != null ? estimate : MemoryBudget.estimate(xmlFile, streaming);
+        try {
+            memoryBudget.acquire(memory);
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            converter.failure = e.toString();
+            memory = -1;
+        }
+        if(memory >= 0){
+            try {
+                if(bundle != null)
+                    converter.bundlePart = bundle.acquire();
+                converter.gzipLevel = gzipLevel;
+                converter.gzippedPy = gzippedPy;
+                done = converter.transformOneAST(xmlFile);
+            }catch (IOException e){
+                System.out.println("Open bundle error " + e);
+                converter.failure = e.toString();
+            }finally {
+                if(converter.bundlePart != null)
+                    bundle.release(converter.bundlePart);
+                memoryBudget.release(memory);
+            }
+        }
+        if(!done)
+            nbFailedFiles.incrementAndGet();
+        if(report != null)
+            report.add(converter.stats);
+        if(manifest != null){
+            if(done)
+                manifest.put(xmlFile, hashes.get(xmlFile));
+            else
+                manifest.remove(xmlFile);
+        }
+        if(journal != null){
+            try {
+                if(done)
+                    journal.done(xmlFile);
+                else
+                    journal.failed(xmlFile, String.valueOf(converter.failure));
+            }catch (IOException e){
+                System.out.println("Write journal error " + e);
+            }
         }
     }
 
     /**
      * transform a Python XML to Intimals XML format
      * @param xmlFile :
+     * @return : true if the file has been transformed
      */
-    private void transformOneAST(String xmlFile){
+    private boolean transformOneAST(String xmlFile){
+        stats = new ConversionStats(xmlFile);
         try{
             // copy py file to output dir
-            String pythonFile = xmlFile.substring(0,xmlFile.length()-3)+"py";
-            String newPyFile = output+"/"+Paths.get(pythonFile).getFileName().toString();
+            String pythonFile = getPyFile(xmlFile);
+            String pyFileName = Paths.get(getPyFileName(xmlFile)).getFileName().toString();
+            String newPyFile = output+"/"+pyFileName + (gzippedPy ? GZIP_SUFFIX : "");
             // String txtFile = newPyFile.substring(0,newPyFile.length()-2)+"txt";
-            copyPyFile(pythonFile, newPyFile);
+            if(bundlePart == null){
+                copyPyFile(pythonFile, newPyFile, gzippedPy ? gzipLevel : UNCOMPRESSED);
+            }else{
+                try (Writer out = bundlePart.newEntry(StandardCharsets.UTF_8)) {
+                    copyPyFile(pythonFile, out);
+                }
+                bundlePart.addEntry(pyFileName);
+            }
+            stats.endPhase(ConversionStats.COPY_PY);
 
             // read python code
-            pyFileContent = readPyFile(newPyFile);
-
-            linesVariables = new HashMap<>();
-
-            // read XML and added line number
-            InputStream is = getXMLStream(xmlFile);
-            document = PositionalXMLReader.readXML(is);
-            is.close();
-
-            // update xml document
-            id = 0;
-            updateNodes(document.getElementsByTagName("Module").item(0));
-
-            // write DOM to xml file
-            String xmlFileName =  Paths.get(xmlFile).getFileName().toString();
-            String outputFile = output + "/" +xmlFileName;
-            // write xml to file
-            writeDomObjectToFile(document, outputFile);
-            // format pretty xml
-            XmlFormatter.format(outputFile, outputFile);
-        }catch (Exception e){
+            columnFinder = new PyColumnFinder(readPyFile(bundlePart == null ? newPyFile : pythonFile));
+            stats.endPhase(ConversionStats.READ_PY);
+
+            String xmlFileName = getOutputName(xmlFile);
+            String treeFileName = binary ? xmlFileName.substring(0, xmlFileName.length() - 3) + "tree" : null;
+            // a bundle file is written one entry at a time, the tree is kept until the xml is written
+            ByteArrayOutputStream bundledTree = binary && bundlePart != null ? new ByteArrayOutputStream() : null;
+
+            if(streaming){
+                // transform the stream of xml events
+                StreamTransformPyAST streamTransform = new StreamTransformPyAST(columnFinder, rules);
+                streamTransform.setStats(stats);
+                try (Writer out = getOutputWriter(xmlFileName);
+                     OutputStream treeOut = getTreeOutput(treeFileName, bundledTree)) {
+                    streamTransform.transform(xmlFile, getTreeHandler(out, treeOut));
+                }
+            }else {
+                CompactTree tree;
+                if(pythonSources){
+                    // parse python code
+                    tree = PySourceParser.parse(readPySource(pythonFile), getPyFileName(xmlFile));
+                }else {
+                    // read XML and added line number
+                    try (InputStream is = getXMLStream(xmlFile)) {
+                        tree = PositionalXMLReader.readTree(is);
+                    }
+                }
+                stats.endPhase(ConversionStats.PARSE);
+
+                // update xml tree
+                transformTree(tree, columnFinder);
+                stats.endPhase(ConversionStats.TRANSFORM);
+                stats.setCounter(ConversionStats.ELEMENTS, textSpans.size());
+
+                // write the tree to pretty xml file
+                try (Writer out = getOutputWriter(xmlFileName);
+                     OutputStream treeOut = getTreeOutput(treeFileName, bundledTree)) {
+                    tree.write(getTreeHandler(out, treeOut));
+                }
+                stats.endPhase(ConversionStats.WRITE);
+            }
+            if(bundlePart != null)
+                bundlePart.addEntry(xmlFileName);
+            if(bundledTree != null)
+                writeBundledTree(treeFileName, bundledTree);
+            if(bundlePart != null)
+                bundlePart.commit();
+            stats.setCounter(ConversionStats.COLUMN_LOOKUPS, columnFinder.getNbLookups());
+            stats.setCounter(ConversionStats.COLUMN_FALLBACKS, columnFinder.getNbFallbacks());
+            stats.setDone(true);
+            return true;
+        }catch (Exception | StackOverflowError | OutOfMemoryError e){
+            // the tree of this file is dropped, the other files are transformed
+            stats.endCurrentPhase();
             System.out.println("Convert one AST error " + e);
+            failure = e.toString();
+            deleteOutputs(xmlFile);
+            return false;
         }
     }
 
     /**
-     * recursively update a node
-     * @param node
+     * remove the outputs written before the transformation of a file failed
+     * @param xmlFile : input xml file
      */
-    private void updateNodes(Node node) {
+    private void deleteOutputs(String xmlFile){
         try {
-            //if this is an internal node
-            if(node.getNodeType() == Node.ELEMENT_NODE) {
+            if(bundlePart != null)
+                bundlePart.rollback();
+            else
+                deleteOutputs(getOutputName(xmlFile), true);
+        }catch (IOException e){
+            System.out.println("Remove output error " + e);
+        }
+    }
+
+    /**
+     * remove the output files of an input, compressed or not
+     * @param outputName : name of the output xml file
+     * @param withTree : true to also remove the binary tree
+     * @throws IOException
+     */
+    private void deleteOutputs(String outputName, boolean withTree) throws IOException {
+        String baseName = outputName.substring(0, outputName.length() - 3);
+        for(String name : new String[]{outputName, baseName + "py"}){
+            Files.deleteIfExists(Paths.get(output, name));
+            Files.deleteIfExists(Paths.get(output, name + GZIP_SUFFIX));
+        }
+        if(withTree)
+            Files.deleteIfExists(Paths.get(output, baseName + "tree"));
+    }
 
-                //ignore manually added tags
-                if(node.getNodeName().equals("nameDef") || node.getNodeName().equals("identifier")) return;
+    /**
+     * @param outputName : name of the output xml file
+     * @return : name of the file written for it, with the gzip suffix if it is compressed
+     */
+    private String getXmlOutputName(String outputName){
+        return gzipLevel == UNCOMPRESSED ? outputName : outputName + GZIP_SUFFIX;
+    }
 
-                //update attributes for this node
-                updateAttribute(node);
-                //increase node ID
-                ++id;
+    /**
+     * @param xmlFileName : name of the output xml file
+     * @return : writer of the output file, in the output directory or in a bundle file
+     * @throws IOException
+     */
+    private Writer getOutputWriter(String xmlFileName) throws IOException {
+        if(bundlePart == null)
+            return getXMLWriter(output + "/" + getXmlOutputName(xmlFileName), gzipLevel);
+        return bundlePart.newEntry(StandardCharsets.UTF_8);
+    }
 
-                //special cases: if node is ClassDef or FunctionDef, then add an intermediate tag "name"
-                if(node.getNodeName().equals("ClassDef") || node.getNodeName().equals("FunctionDef")) {
-                    addNameTemp(node,"nameDef");
-                }
+    /**
+     * @param treeFileName : name of the output tree file, null for no binary tree
+     * @param bundledTree : buffer of the tree of a bundled file, null if the file is not bundled
+     * @return : stream of the binary tree, to the file in the output directory or to the buffer, null for no binary tree
+     * @throws IOException
+     */
+    private OutputStream getTreeOutput(String treeFileName, ByteArrayOutputStream bundledTree) throws IOException {
+        if(treeFileName == null || bundledTree != null)
+            return bundledTree;
+        return Files.newOutputStream(Paths.get(output, treeFileName));
+    }
+
+    /**
+     * @param out : writer of the output xml
+     * @param tree : stream of the binary tree, null for no binary tree
+     * @return : handler writing the converted tree to the xml and to the binary tree
+     */
+    private TreeHandler getTreeHandler(Writer out, OutputStream tree){
+        TreeHandler handler = new XmlFormatter(out);
+        if(tree != null)
+            handler = TreeHandler.both(handler, new BinaryTreeWriter(tree));
+        return handler;
+    }
 
+    /**
+     * write the binary tree of a bundled file after its xml
+     * @param treeFileName : name of the output tree file
+     * @param tree : binary tree
+     * @throws IOException
+     */
+    private void writeBundledTree(String treeFileName, ByteArrayOutputStream tree) throws IOException {
+        try (OutputStream out = bundlePart.newEntry()) {
+            tree.writeTo(out);
+        }
+        bundlePart.addEntry(treeFileName);
+    }
+
+    /**
+     * update a tree read by PositionalXMLReader
+     * @param tree : xml tree with line numbers
+     * @param columnFinder : column finder of the python file
+     */
+    void transformTree(CompactTree tree, PyColumnFinder columnFinder){
+        this.tree = tree;
+        this.columnFinder = columnFinder;
+        textSpans = tree.getTextSpans();
+        id = 0;
+        int module = tree.findElement(Labels.MODULE);
+        if(module == NONE)
+            throw new IllegalStateException("no Module element");
+        updateTree(module);
+    }
+
+    /**
+     * update the nodes of a subtree in document order, without recursion: a node which has to update its children
+     * pushes them on the stack, they are updated after it and before its next sibling, so the depth of the tree
+     * is only limited by the heap
+     * @param root : root of the subtree
+     */
+    private void updateTree(int root) {
+        depth = 0;
+        updateNodes(root);
+        while(depth > 0){
+            int child = stackChildren[depth - 1];
+            if(child == NONE){
+                --depth;
+                continue;
+            }
+            // the update of a node does not change its siblings
+            stackChildren[depth - 1] = tree.getNextSibling(child);
+            switch (stackModes[depth - 1]) {
+                case UPDATE_LIST_CHILDREN:
+                    if(!isAstNode(child))
+                        // change to AST node
+                        changeNodeToAST(child);
+                    updateNodes(child);
+                    break;
+                case CHANGE_TO_AST:
+                    changeToASTNode(child);
+                    break;
+                default:
+                    updateNodes(child);
+            }
+        }
+    }
+
+    /**
+     * update the children of a node after it
+     * @param node : parent node
+     * @param mode : how the children are updated
+     */
+    private void pushChildren(int node, int mode) {
+        if(depth == stackChildren.length){
+            stackChildren = Arrays.copyOf(stackChildren, depth * 2);
+            stackModes = Arrays.copyOf(stackModes, depth * 2);
+        }
+        stackChildren[depth] = tree.getFirstChild(node);
+        stackModes[depth] = mode;
+        ++depth;
+    }
+
+    /**
+     * update a node, its children are pushed on the stack
+     * @param node
+     */
+    private void updateNodes(int node) {
+        //if this is an internal node
+        if(tree.isElement(node)) {
+
+            String name = tree.getName(node);
+            NodeRules.Rule rule = rules.get(name);
+            //ignore manually added tags
+            if(rule == NodeRules.Rule.IGNORE) return;
+
+            //update attributes for this node
+            updateAttribute(node);
+            //increase node ID
+            ++id;
+
+            switch (rule) {
+                //special cases: if node is ClassDef or FunctionDef, then add an intermediate tag "name"
+                case DECLARATION:
+                    addNameTemp(node, Labels.NAME_DEF);
+                    updateChildren(node, name);
+                    break;
                 //special cases: cmpop node
-                Set<String> specialCases = new HashSet<>(Arrays.asList("cmpop", "attr", "name"));
-                if(specialCases.contains(node.getNodeName())){
+                case OPERATOR:
                     treatCmpopNode(node);
-                    return;
-                }
-
-                /**
-                 * case 1: AST node contains a child which is an AST node
-                 * then add an interNode child and move AST children nodes to this interNode node
-                 *
-                 * case 2: AST node contains multiple non AST nodes having the same name
-                 * add InterAstNode to each attribute then add identifier to InterAstNode
-                 *
-                 * case 3: non-AST node contains children which are non AST nodes
-                 * then change these non-AST children node to AST node and add an identifier to it
-                 *
-                 * otherwise: transform normally
-                 */
+                    break;
                 //special case: node label is body, then need to add intermediate nodes: Block -> statements
-                if(node.getNodeName().equals("body")){
+                case BODY:
                     // increase line to lineNr + 1
                     increaseLineNr(node);
                     // add Block to body
                     addBlockStatements(node);
-                }else{
-                    //case 1
-                    if(isAstNode(node) && containAstNode(node)){
-                        addInterNode(node);
-                    }else{
-                        //case 2
-                        if(isAstNode(node) && hasRepeatedChildren(node)){
-                            treatRepeatedChildren(node);
-                        }else {
-                            //case 3
-                            if(!isAstNode(node) && !containAstNode(node) ){
-                                changeToASTNode(node);
-                            }else{
-                                //recursively read children of the current node
-                                NodeList nodeList = node.getChildNodes();
-                                for (int i = 0; i < nodeList.getLength(); ++i) {
-                                    updateNodes(nodeList.item(i));
-                                }
-                            }
-                        }
+                    break;
+                default:
+                    updateChildren(node, name);
+            }
+        }else {//this is a text content
+            if(!tree.getText(node).trim().isEmpty()){
+                String leaf = tree.getText(node);
+                //if this leaf (node) has a sibling it means that it is not a unique leaf of an XML tag
+                int a = tree.getNextSibling(node);
+                int b = tree.getPreviousSibling(node);
+                if(a == NONE && b == NONE){
+                    // if its parent is an AST node we need to add and an additional "identifier"
+                    if(isAstNode(tree.getParent(node))) {
+                        //add identifier
+                        addIdentifier(tree.getParent(node), leaf);
+                        //Clear text content
+                        tree.setText(node, "");
                     }
+                }else{
+                    //Clear a text content
+                    tree.setText(node, "");
                 }
-            }else {//this is a text content
-                if(node.getNodeType() == Node.TEXT_NODE && !node.getTextContent().trim().isEmpty()){
-                    String leaf = node.getTextContent();
-                    //if this leaf (node) has a sibling it means that it is not a unique leaf of an XML tag
-                    Node a = node.getNextSibling();
-                    Node b = node.getPreviousSibling();
-                    if(a == null && b == null){
-                        // if its parent is an AST node we need to add and an additional "identifier"
-                        if(isAstNode(node.getParentNode())) {
-                            //add identifier
-                            addIdentifier(node.getParentNode(), leaf);
-                            //Clear text content
-                            node.setNodeValue("");
-                        }
-                    }else{
-                        //Clear a text content
-                        node.setNodeValue("");
-                    }
+            }
+        }
+    }
+
+    /**
+     * update a node from the kinds of its children, which are classified once
+     * @param node : element
+     * @param name : name of the element
+     */
+    private void updateChildren(int node, String name) {
+        boolean astNode = NodeRules.isAstLabel(name);
+        int kinds = classifyChildren(node, astNode);
+
+            /**
+             * case 1: AST node contains a child which is an AST node
+             * then add an interNode child and move AST children nodes to this interNode node
+             *
+             * case 2: AST node contains multiple non AST nodes having the same name
+             * add InterAstNode to each attribute then add identifier to InterAstNode
+             *
+             * case 3: non-AST node contains children which are non AST nodes
+             * then change these non-AST children node to AST node and add an identifier to it
+             *
+             * otherwise: transform normally
+             */
+        //case 1
+        if(astNode && (kinds & CONTAIN_AST_NODE) != 0){
+            addInterNode(node);
+        }else{
+            //case 2
+            if(astNode && (kinds & REPEATED_CHILDREN) != 0){
+                treatRepeatedChildren(node);
+            }else {
+                //case 3
+                if(!astNode && (kinds & CONTAIN_AST_NODE) == 0){
+                    pushChildren(node, CHANGE_TO_AST);
+                }else{
+                    //read children of the current node
+                    pushChildren(node, UPDATE_CHILDREN);
                 }
             }
-        }catch (Exception e){
-            e.printStackTrace();
-            System.exit(-1);
         }
     }
 
+    /**
+     * find in one pass whether a node contains AST nodes and, for an AST node, which of its non-AST children
+     * have the same name, they are kept in repeatedNames
+     * @param node : element
+     * @param astNode : true if the element is an AST node
+     * @return : CONTAIN_AST_NODE and REPEATED_CHILDREN flags
+     */
+    private int classifyChildren(int node, boolean astNode) {
+        int nbNames = 0;
+        for (int child = tree.getFirstChild(node); child != NONE; child = tree.getNextSibling(child)) {
+            if(!tree.isElement(child))
+                continue;
+            String name = tree.getName(child);
+            if(NodeRules.isAstLabel(name))
+                return CONTAIN_AST_NODE;
+            if(astNode){
+                if(nbNames == childNames.length)
+                    childNames = Arrays.copyOf(childNames, nbNames * 2);
+                childNames[nbNames++] = name;
+            }
+        }
+        // the names are compared by identity, an AST node has a few fields
+        nbRepeatedNames = 0;
+        for(int i = 0; i < nbNames; ++i){
+            String name = childNames[i];
+            if(name == null)
+                continue;
+            boolean repeated = false;
+            for(int j = i + 1; j < nbNames; ++j){
+                if(childNames[j] == name){
+                    childNames[j] = null;
+                    repeated = true;
+                }
+            }
+            if(repeated){
+                if(nbRepeatedNames == repeatedNames.length)
+                    repeatedNames = Arrays.copyOf(repeatedNames, nbRepeatedNames * 2);
+                repeatedNames[nbRepeatedNames++] = name;
+            }
+        }
+        return nbRepeatedNames > 0 ? REPEATED_CHILDREN : 0;
+    }
+
     /**
      * calculate line number for body node
      * @param node : body
      */
-    private void increaseLineNr(Node node) {
+    private void increaseLineNr(int node) {
         // get begin and end line numbers
-        int lineNr = Integer.valueOf(node.getParentNode().getAttributes().getNamedItem(LineNr).getNodeValue());
-        int endLineNr = Integer.valueOf(node.getParentNode().getAttributes().getNamedItem(EndLineNr).getNodeValue());
+        int lineNr = tree.getPosition(tree.getParent(node), CompactTree.LINE_NR);
+        int endLineNr = tree.getPosition(tree.getParent(node), CompactTree.END_LINE_NR);
         // if the code has more than 1 line
         if(lineNr < endLineNr)
             // recalculate begin line number
-            lineNr = Integer.valueOf(node.getAttributes().getNamedItem(LineNr).getNodeValue()) + 1;
+            lineNr = tree.getPosition(node, CompactTree.LINE_NR) + 1;
         // update line number attributes
-        ((Element)node).setAttribute(LineNr, String.valueOf(lineNr));
-        ((Element)node).setAttribute(EndLineNr, String.valueOf(endLineNr));
+        tree.setPosition(node, CompactTree.LINE_NR, lineNr);
+        tree.setPosition(node, CompactTree.END_LINE_NR, endLineNr);
     }
 
     /**
      * collect all variables of line of code
      * @param node
      */
-    private void collectLinesVariables(Node node, String identifier) {
+    private void collectLinesVariables(int node, String identifier) {
         //get line number of the current node
-        int lineNr = Integer.valueOf(node.getAttributes().getNamedItem("LineNr").getNodeValue());
+        int lineNr = tree.getPosition(node, CompactTree.LINE_NR);
         //add variable name to this line number
-        if (!linesVariables.containsKey(lineNr)) {
-            List<String> temp = new LinkedList<>();
-            temp.add(identifier);
-            linesVariables.put(lineNr, temp);
-        } else {
-            List<String> temp = linesVariables.get(lineNr);
-            temp.add(identifier);
-            linesVariables.put(lineNr, temp);
-        }
+        columnFinder.collectLinesVariables(lineNr, identifier);
     }
 
     /**
      * updata attributes of a node
      * @param node : input node
      */
-    private void updateAttribute(Node node) {
+    private void updateAttribute(int node) {
         //update ID for internal node
-        ((Element)node).setAttribute(ID, String.valueOf(id));
-        //find line and column numbers
-        List<String> LCNumbers = findLineColNumbers(node, node.getTextContent().trim());
+        tree.setPosition(node, CompactTree.ID, id);
+        //find line and column numbers from the text of the node in the input XML
+        int span = tree.getSpan(node);
+        int[] LCNumbers = columnFinder.findLineColNumbers(tree.getXmlLine(node),
+                textSpans.getNbLines(span), textSpans.getText(span));
         //add ... to attributes
-        ((Element)node).setAttribute(LineNr, LCNumbers.get(0));
-        ((Element)node).setAttribute(EndLineNr, LCNumbers.get(1));
-        ((Element)node).setAttribute(ColNr, LCNumbers.get(2));
-        ((Element)node).setAttribute(EndColNr,LCNumbers.get(3)); //
+        setPositions(node, LCNumbers);
+    }
+
+    private void setPositions(int node, int[] LCNumbers){
+        tree.setPosition(node, CompactTree.LINE_NR, LCNumbers[0]);
+        tree.setPosition(node, CompactTree.END_LINE_NR, LCNumbers[1]);
+        tree.setPosition(node, CompactTree.COL_NR, LCNumbers[2]);
+        tree.setPosition(node, CompactTree.END_COL_NR, LCNumbers[3]);
     }
 
     /**
-     * change a non-AST node to AST node
-     * @param node : input node
+     * change a child of a non-AST node to AST node
+     * @param child : child of the non-AST node
      */
-    private void changeToASTNode(Node node){
-        //for each child, change its name to AST name format and add identifier
-        NodeList nodeList = node.getChildNodes();
-        for(int i=0; i<nodeList.getLength(); ++i){
-            if(nodeList.item(i).getNodeType() == Node.ELEMENT_NODE){
-                // change to AST node
-                changeNodeToAST(nodeList.item(i));
-                // if this node contain an element the continue update this node
-                if(nodeList.item(i).getChildNodes().getLength() > 1){
-                    // System.out.println("update");
-                    updateNodes(nodeList.item(i));
-                }else{
-                    // System.out.println("add identifier");
-                    // update attribute for this node
-                    updateAttribute(nodeList.item(i));
-                    ++id;
-                    // add identifier
-                    String identifier = nodeList.item(i).getTextContent();
-                    // delete text content of this node
-                    nodeList.item(i).setTextContent("");
-                    // add an identifier node to this node
-                    addIdentifier(nodeList.item(i), identifier);
-                }
+    private void changeToASTNode(int child){
+        //change its name to AST name format and add identifier
+        if(tree.isElement(child)){
+            // change to AST node
+            changeNodeToAST(child);
+            // if this node contain an element the continue update this node
+            if(tree.getFirstChild(child) != tree.getLastChild(child)){
+                updateNodes(child);
             }else{
-                updateTextNode(nodeList.item(i));
+                // update attribute for this node
+                updateAttribute(child);
+                ++id;
+                // add identifier
+                String identifier = tree.getTextContent(child);
+                // delete text content of this node
+                tree.removeChildren(child);
+                // add an identifier node to this node
+                addIdentifier(child, identifier);
             }
+        }else{
+            updateTextNode(child);
         }
     }
 
@@ -266,85 +957,58 @@ public class TransformPyAST {
      * update an internal node
      * @param node : node
      */
-    private void addInterNode(Node node) {
+    private void addInterNode(int node) {
         // change name of children if this node is BinOp
-        if(node.getNodeName().equals("BinOp"))
+        if(tree.getName(node) == Labels.BIN_OP)
             changeNameForBinOp(node);
 
         //add intermediate node
-        String tagName = "list"+node.getNodeName();
+        String tagName = rules.getListLabel(tree.getName(node));
 
         addIntermediateNode(node, tagName);
 
         //move children to intermediate node
-        moveAllChildren(node, node.getChildNodes());
-
-        //recursively read children of the intermediate node
-        NodeList interChildren = node.getFirstChild().getChildNodes();
-        for (int i = 0; i < interChildren.getLength(); ++i) {
-            if(isAstNode(interChildren.item(i)))
-                updateNodes(interChildren.item(i));
-            else{
-                // change to AST node
-                changeNodeToAST(interChildren.item(i));
-                // update this node
-                updateNodes(interChildren.item(i));
-            }
-        }
+        moveAllChildren(node);
+
+        //read children of the intermediate node, the non-AST nodes are changed to AST nodes
+        pushChildren(tree.getFirstChild(node), UPDATE_LIST_CHILDREN);
     }
 
     /**
      * change name of children into Op
      * @param node
      */
-    private void changeNameForBinOp(Node node){
-        NodeList nodeList = node.getChildNodes();
-        int count=0;
-        for(int i=0; i<nodeList.getLength(); ++i){
-            if(nodeList.item(i).getNodeType() == Node.ELEMENT_NODE){
-                if(!nodeList.item(i).getNodeName().equals("BinOp")) {
-                    String nodeName = "Op";
-                    document.renameNode(nodeList.item(i), null, nodeName);
-                    ++count;
-                }
-            }
+    private void changeNameForBinOp(int node){
+        for(int child = tree.getFirstChild(node); child != NONE; child = tree.getNextSibling(child)){
+            if(tree.isElement(child) && tree.getName(child) != Labels.BIN_OP)
+                tree.rename(child, Labels.OP);
         }
-
     }
 
-    private void changeNodeToAST(Node node){
-        String oldNodeName = node.getNodeName();
-        String newNodeName = Character.toUpperCase(oldNodeName.charAt(0)) +
-                oldNodeName.substring(1, oldNodeName.length());
+    private void changeNodeToAST(int node){
         //change node name
-        document.renameNode(node, null, newNodeName);
+        tree.rename(node, rules.getAstLabel(tree.getName(node)));
     }
     /**
      * add Block -> statements to body
       * @param node : input node ~ body
      */
-    private void addBlockStatements(Node node){
+    private void addBlockStatements(int node){
         //add Block as the first child of this node
-        addIntermediateNode(node, "Block");
+        addIntermediateNode(node, Labels.BLOCK);
         //move children to Block
-        moveAstNode(node, node.getChildNodes());
+        moveAstNode(node);
 
         //get Block node
-        Node block = node.getFirstChild();
+        int block = tree.getFirstChild(node);
 
         //add statements to Block
-        addIntermediateNode(block, "statements");
+        addIntermediateNode(block, Labels.STATEMENTS);
         //move children to statements
-        moveAstNode(block, block.getChildNodes());
+        moveAstNode(block);
 
         //update all children of statements
-        Node statements = block.getFirstChild();
-        NodeList children = statements.getChildNodes();
-        for(int i=0; i<children.getLength(); ++i){
-            updateNodes(children.item(i));
-        }
-
-
+        pushChildren(tree.getFirstChild(block), UPDATE_CHILDREN);
     }
 
     /**
@@ -352,109 +1016,84 @@ public class TransformPyAST {
      * InterAstNode
      * @param node : node has repeated children
      */
-    private void treatRepeatedChildren(Node node) {
-        //change name for each child if it is in repeated list
-        NodeList nodeList = node.getChildNodes();
-        Map<String,Integer> oc = getRepeatedChildren(node);
+    private void treatRepeatedChildren(int node) {
+        //change name for each child if it is in repeated list, before the children reuse the list
         int count = 1;
-        for(int i = 0; i<nodeList.getLength(); ++i){
-            if(oc.containsKey(nodeList.item(i).getNodeName())){
+        for(int child = tree.getFirstChild(node); child != NONE; child = tree.getNextSibling(child)){
+            if(tree.isElement(child) && isRepeatedName(tree.getName(child))){
                 //change name
-                document.renameNode(nodeList.item(i), null, nodeList.item(i).getNodeName()+String.valueOf(count));
+                tree.rename(child, Labels.intern(tree.getName(child)+String.valueOf(count)));
                 ++count;
-                updateNodes(nodeList.item(i));
-            }else{
-                //System.out.println(nodeList.item(i).getNodeName() +" "+nodeList.item(i).getTextContent());
-                updateNodes(nodeList.item(i));
             }
         }
+        pushChildren(node, UPDATE_CHILDREN);
+    }
+
+    private boolean isRepeatedName(String name){
+        for(int i = 0; i < nbRepeatedNames; ++i)
+            if(repeatedNames[i] == name)
+                return true;
+        return false;
     }
 
     /**
      * add intermediate node Name to cmpop node
      * @param node : cmpop node
      */
-    private void treatCmpopNode(Node node){
+    private void treatCmpopNode(int node){
         //store compare operator
-        String identifier = node.getTextContent();
+        String identifier = tree.getTextContent(node);
         //clear text content
-        node.setTextContent("");
+        tree.removeChildren(node);
         //add intermediate Name
-        addIntermediateNode(node, "Name");
+        addIntermediateNode(node, Labels.NAME);
         //add identifier to Name
-        addIdentifier(node.getFirstChild(), identifier);
+        addIdentifier(tree.getFirstChild(node), identifier);
     }
 
     /**
-     * @param node : input node
-     * @return : return repeated children of a node
-     */
-    private Map<String, Integer> getRepeatedChildren(Node node) {
-        Map<String,Integer> oc = new HashMap<>();
-        NodeList childrenTemp = node.getChildNodes();
-        for(int i=0; i<childrenTemp.getLength(); ++i){
-            //add InterAstNode to this child
-            if(!isAstNode(childrenTemp.item(i)) && childrenTemp.item(i).getNodeType()==Node.ELEMENT_NODE){
-                if(oc.containsKey(childrenTemp.item(i).getNodeName())){
-                    oc.put(childrenTemp.item(i).getNodeName(), oc.get(childrenTemp.item(i).getNodeName())+1);
-                }else {
-                    oc.put(childrenTemp.item(i).getNodeName(), 1);
-                }
-            }
-        }
-        oc.values().removeIf(value -> value < 2);
-        return oc;
-    }
-
-    /**
-     * return true if node has repeated children
-     * @param node : input node
-     * @return : true if there exist children that have the same name
-     */
-    private boolean hasRepeatedChildren(Node node){
-        Map<String, Integer> oc = getRepeatedChildren(node);
-        for(Map.Entry<String, Integer> entry : oc.entrySet()){
-            if(entry.getValue() > 1){
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * //move all children to the first child
+     * //move all element children to the first child, each run of consecutive elements is moved in one step
      * @param node : node
-     * @param nodeList : children
      */
-    private void moveAllChildren(Node node, NodeList nodeList) {
-        for(int i=1; i<nodeList.getLength(); ++i){
-            if(nodeList.item(i).getNodeType() == Node.ELEMENT_NODE){
-                node.getFirstChild().appendChild(nodeList.item(i));
-                --i;
+    private void moveAllChildren(int node) {
+        int interNode = tree.getFirstChild(node);
+        int child = tree.getNextSibling(interNode);
+        while(child != NONE){
+            if(tree.isElement(child)){
+                int last = child;
+                while(tree.getNextSibling(last) != NONE && tree.isElement(tree.getNextSibling(last)))
+                    last = tree.getNextSibling(last);
+                int next = tree.getNextSibling(last);
+                tree.moveChildren(child, last, interNode);
+                child = next;
             }else{
-                if(nodeList.item(i).getNodeType() == Node.TEXT_NODE) {
-                    //System.out.println("deleting text ... " + nodeList.item(i).getTextContent().trim());
-                    updateTextNode(nodeList.item(i));
-                }
+                // the text has a previous sibling, at least the first child
+                updateTextNode(child);
+                child = tree.getNextSibling(child);
             }
         }
     }
 
     /**
-     * //move all AST children to the first child of the node
+     * //move all AST children to the first child of the node, each run of consecutive AST nodes is moved in one step
      * @param node : node
-     * @param nodeList : children
      */
-    private void moveAstNode(Node node, NodeList nodeList) {
-        for(int i=1; i<nodeList.getLength(); ++i){
-            if(nodeList.item(i).getNodeType() == Node.ELEMENT_NODE && isAstNode(nodeList.item(i))){
-                node.getFirstChild().appendChild(nodeList.item(i));
-                --i;
+    private void moveAstNode(int node) {
+        int interNode = tree.getFirstChild(node);
+        int child = tree.getNextSibling(interNode);
+        while(child != NONE){
+            if(isAstNode(child)){
+                int last = child;
+                while(tree.getNextSibling(last) != NONE && isAstNode(tree.getNextSibling(last)))
+                    last = tree.getNextSibling(last);
+                int next = tree.getNextSibling(last);
+                tree.moveChildren(child, last, interNode);
+                child = next;
             }else{
-                if(nodeList.item(i).getNodeType() == Node.TEXT_NODE) {
-                    //System.out.println("deleting text ... " + nodeList.item(i).getTextContent().trim());
-                    updateTextNode(nodeList.item(i));
+                if(tree.isText(child)) {
+                    updateTextNode(child);
                 }
+                child = tree.getNextSibling(child);
             }
         }
     }
@@ -463,16 +1102,12 @@ public class TransformPyAST {
      * update a leaf node
      * @param node : xml node
      */
-    private void updateTextNode(Node node) {
-        Node a = node.getNextSibling();
-        Node b = node.getPreviousSibling();
-        if(a == null && b == null){
-            //System.out.println("leaf node: "+ leaf);
-            //addIdentifyNode(node,leaf);
-        }else{
+    private void updateTextNode(int node) {
+        int a = tree.getNextSibling(node);
+        int b = tree.getPreviousSibling(node);
+        if(a != NONE || b != NONE){
             //Clear a Text Node
-            //System.out.println("deleted "+leaf);
-            node.setNodeValue("");
+            tree.setText(node, "");
         }
     }
 
@@ -481,24 +1116,8 @@ public class TransformPyAST {
      * @param node
      * @return : true if node is an AST node
      */
-    private boolean isAstNode(Node node){
-        return isUpperCase( node.getNodeName().charAt(0));
-    }
-
-    /**
-     * if a node contains a child which is an AST node then return true
-     * @param node
-     * @return : true if this node contains AST node
-     */
-    private boolean containAstNode(Node node){
-        boolean isASTNode = false;
-        NodeList children = node.getChildNodes();
-        for (int i=0; i<children.getLength(); ++i)
-            if(isUpperCase(children.item(i).getNodeName().charAt(0))){
-                isASTNode = true;
-                break;
-        }
-        return isASTNode;
+    private boolean isAstNode(int node){
+        return tree.isElement(node) && NodeRules.isAstLabel(tree.getName(node));
     }
 
     /**
@@ -506,28 +1125,16 @@ public class TransformPyAST {
      * @param node : xml node
      * @param tagName : intermediate node name
      */
-    private void addIntermediateNode(Node node, String tagName){
+    private void addIntermediateNode(int node, String tagName){
         try {
             //create new element "name" with attributes
-            Element inter_child = document.createElement(tagName);
-            inter_child.setAttribute(ID, String.valueOf(id));
-
-            String lineNr = ((Element) node).getAttribute(LineNr);
-            inter_child.setAttribute(LineNr, lineNr);
-
-            String endLineNr = ((Element) node).getAttribute(EndLineNr);
-            inter_child.setAttribute(EndLineNr, endLineNr);
+            int inter_child = tree.createElement(tagName, 0, NONE);
+            stats.count(ConversionStats.INTERMEDIATE_NODES);
+            tree.setPosition(inter_child, CompactTree.ID, id);
+            tree.copyPositions(node, inter_child);
 
-            String colNr = ((Element) node).getAttribute(ColNr);
-            inter_child.setAttribute(ColNr, colNr);
-
-            String endColNr = ((Element) node).getAttribute(EndColNr);
-            inter_child.setAttribute(EndColNr, endColNr);
-
-            //insert inter_child before first child
-            Node firstChild = node.getFirstChild();
-            // insert before the first
-            node.insertBefore(inter_child, firstChild);
+            // insert before the first child
+            tree.insertFirst(node, inter_child);
 
             //increase node ID
             ++id;
@@ -541,30 +1148,23 @@ public class TransformPyAST {
      * @param node : node
      * @param identifier : identifier
      */
-    private void addIdentifier(Node node, String identifier){
+    private void addIdentifier(int node, String identifier){
         try {
+            identifier = Labels.internText(identifier);
             //collect variable name
             collectLinesVariables(node, identifier.trim());
 
             //create new element "Identify" with attributes
-            Element iden_child = document.createElement("identifier");
-            iden_child.setAttribute(ID, String.valueOf(id));
-
-            iden_child.setTextContent(identifier);
-
-            String lineNr = ((Element) node).getAttribute(LineNr);
-            iden_child.setAttribute(LineNr, lineNr);
-
-            String endLineNr = ((Element) node).getAttribute(EndLineNr);
-            iden_child.setAttribute(EndLineNr, endLineNr);
+            int iden_child = tree.createElement(Labels.IDENTIFIER, 0, NONE);
+            stats.count(ConversionStats.IDENTIFIERS);
+            tree.setPosition(iden_child, CompactTree.ID, id);
 
-            String colNr = ((Element) node).getAttribute(ColNr);
-            iden_child.setAttribute(ColNr, colNr);
+            if(!identifier.isEmpty())
+                tree.appendChild(iden_child, tree.createText(identifier));
 
-            String endColNr = ((Element) node).getAttribute(EndColNr);
-            iden_child.setAttribute(EndColNr, endColNr);
+            tree.copyPositions(node, iden_child);
 
-            node.appendChild(iden_child);
+            tree.appendChild(node, iden_child);
 
             //increase node ID
             ++id;
@@ -579,246 +1179,33 @@ public class TransformPyAST {
      * @param node : xml node
      * @param tagName : new child's name
      */
-    private void addNameTemp(Node node, String tagName) {
+    private void addNameTemp(int node, String tagName) {
         try {
             //create new element "name" with attributes
-            Element name_child = document.createElement(tagName);
-            name_child.setAttribute(ID, String.valueOf(id));
+            int name_child = tree.createElement(tagName, 0, NONE);
+            stats.count(ConversionStats.INTERMEDIATE_NODES);
+            tree.setPosition(name_child, CompactTree.ID, id);
 
-            String val = ((Element) node).getAttribute("name");
-            name_child.setAttribute("name", val);
+            String val = tree.getAttribute(node, Labels.NAME_ATTRIBUTE);
+            tree.setAttribute(name_child, Labels.NAME_ATTRIBUTE, val);
 
             // find line and column numbers
-            List<String> LCNumbers = findLineColNumbers(node, val);
-
-            name_child.setAttribute(LineNr, LCNumbers.get(0));
-            name_child.setAttribute(EndLineNr, LCNumbers.get(1));
-
-            name_child.setAttribute(ColNr, LCNumbers.get(2));
-            name_child.setAttribute(EndColNr, LCNumbers.get(3));
-            //get name of the class/method
+            setPositions(name_child, columnFinder.findLineColNumbers(tree.getXmlLine(node), val));
 
             //insert "name" into its parent node
-            Node firstChild = node.getFirstChild();
-            node.insertBefore(name_child, firstChild);
+            tree.insertFirst(node, name_child);
             //increase node ID
             ++id;
 
             //add Name
-            Node firstNameChild = node.getFirstChild();
-            addIntermediateNode(firstNameChild, "Name");
+            addIntermediateNode(name_child, Labels.NAME);
 
             //add identifier
-            addIdentifier(firstNameChild.getFirstChild(), val);
+            addIdentifier(tree.getFirstChild(name_child), val);
         }catch(Exception e){
             System.out.println("add tag name error");
             e.printStackTrace();
         }
     }
 
-    /**
-     * find line and column numbers of a text in input files
-      * @param node : xml doc
-     * @param identifier : string
-     * @return : a list of string including LineNr, EndLineNr, ColNr, EndColNr
-     */
-    private List<String> findLineColNumbers(Node node, String identifier){
-        List<String> results = new LinkedList<>();
-
-        //get line number of this node in the xml file
-        String lineNr = findXmlLineNumber(node);
-        results.add(lineNr);
-
-        int endLineNr = Integer.valueOf(lineNr) + countLines(identifier) - 1;
-        results.add(String.valueOf(endLineNr));
-
-        //get column number of this node from Python file
-        String[] colNr = findPyColumnNr(Integer.valueOf(lineNr), identifier).split("-");
-        results.add(colNr[0]);
-        results.add(colNr[1]);
-
-        return results;
-    }
-
-    /**
-     * find column number of a text from the input python file
-     * @param lineNr : line number
-     * @param identifier : identifier
-     * @return : return first and last position of the identifier in line id lineNr
-     */
-    private String findPyColumnNr(int lineNr, String identifier){
-        int col = 1;
-        //get a line in python file
-        String line = pyFileContent.get(lineNr-1);
-        //get variables from this line
-        List<String> variables = new LinkedList<>();
-        if(linesVariables.containsKey(lineNr))
-            variables = linesVariables.get(lineNr);
-        //find column number of this identifier
-        if(line.contains(identifier)){
-            col = findIdentifierColNr(line, identifier, variables);
-        }
-        //calculate end column number
-        int endColNr;
-        if(countLines(identifier) > 1){
-            endColNr = line.length(); // =col
-        }else{
-            endColNr = col + identifier.trim().length()-1;
-        }
-
-        return String.valueOf(col)+"-"+String.valueOf(endColNr);
-    }
-
-    /**
-     * find column of identifier in a string
-     * @param inputString : input string
-     * @param identifier : identifier
-     * @param variables : this of identifiers have been visited
-     * @return : the position of identifier in the string
-     */
-    private int findIdentifierColNr(String inputString, String identifier, List<String> variables) {
-        //count number of times this identifier occur in the variables list
-        int nbIdentifierOccur = countLiteral(variables, identifier);
-        //find index of this identifier in the input string
-        int index = inputString.indexOf(identifier);
-        try{
-            // if identifier is a combined operator
-            Set<String> combinedOperators = new HashSet<>(Arrays.asList("+=","-=", "*=", "/=", ">=", "<=", "%", "==","!=",">","<","//"));
-            if(combinedOperators.contains(identifier.trim())) {
-                return ++index;
-            }
-            // if identifier is a operator
-            Set<String> operators = new HashSet<>(Arrays.asList("+","-","*","/","**"));
-            if(operators.contains(identifier)){
-                index = getIndexOfOperator(inputString, identifier, nbIdentifierOccur, index);
-                return ++index;
-            }
-            // if this is a variable name
-            return getIndexOfVariable(inputString, identifier, nbIdentifierOccur, index);
-
-        }catch (Exception e){
-            e.printStackTrace();
-        }
-        return ++index;
-    }
-
-    private int getIndexOfVariable(String inputString, String identifier, int nbIdentifierOccur, int index) {
-        if (nbIdentifierOccur > 0) {
-            int nbIdentifierVisit = 0;
-            while (nbIdentifierVisit < nbIdentifierOccur) {
-                // increase index to next position
-                index = inputString.indexOf(identifier, index + 1);
-                //increase index if this identifier is in a substring of another substring
-                while(isInString(inputString, identifier, index)){
-                    index = inputString.indexOf(identifier, index + 1);
-                }
-                //increase number of time visiting
-                ++nbIdentifierVisit;
-            }
-            return ++index;
-        } else {
-            //if identifier is in a substring, e.g, range (a, a+1)
-            //ignore these substring until identifier is found
-            while (isInString(inputString, identifier, index)){
-                index = inputString.indexOf(identifier, index + 1);
-            }
-            return ++index;
-        }
-    }
-
-    private int getIndexOfOperator(String inputString, String identifier, int nbIdentifierOccur, int index) {
-        if(nbIdentifierOccur > 0){
-            int nbIdentifierVisit = 0;
-            // System.out.println("multiple operator "+identifier);
-            while(nbIdentifierVisit < nbIdentifierOccur){
-                // increase index
-                index = inputString.indexOf(identifier, index + 1);
-                // ignore -=, +=, ...
-                while(isNotOperator(inputString, index)){
-                    index = inputString.indexOf(identifier, index + 1);
-                }
-                // ignore **
-                if(identifier.equals("*")) {
-                    while (isNotPowerOperator(inputString, index)) {
-                        index = inputString.indexOf(identifier, index + 2);
-                    }
-                }
-                ++nbIdentifierVisit;
-            }
-        }else{
-            // System.out.println("first operator "+identifier);
-            while(isNotOperator(inputString, index)){
-                index = inputString.indexOf(identifier, index + 1);
-            }
-            if(identifier.equals("*")){
-                while(isNotPowerOperator(inputString, index)){
-                    index = inputString.indexOf(identifier, index + 2);
-                }
-            }
-        }
-        return index;
-    }
-
-    /**
-     * check identifier is in a substring or not
-     * @param inputString : input string
-     * @param identifier : identifier
-     * @param index : index of identifier in the string
-     * @return : true if identifier is included in a substring
-     */
-    private boolean isInString(String inputString, String identifier, int index){
-        // identifier at the first line
-        if(index == 0 && identifier.length() < inputString.length()){
-            // last char is an alphabetic
-            boolean lastChar = Character.isAlphabetic(inputString.charAt(index + identifier.length()));
-            // last char is an _
-            boolean lastCharDash = inputString.charAt(index + identifier.length()) == '_';
-            return  lastChar || lastCharDash;
-        }
-        if(index > 0 && index + identifier.length() < inputString.length()) {
-            // first char is an alphabetic
-            boolean firstChar = Character.isAlphabetic(inputString.charAt(index - 1)) ||
-                    Character.isDigit(inputString.charAt(index - 1));
-            // last char is an alphabetic
-            boolean lastChar = Character.isAlphabetic(inputString.charAt(index + identifier.length())) ||
-                    Character.isDigit(inputString.charAt(index + identifier.length()));
-            // first char is an _
-            boolean firstCharDash = inputString.charAt(index -1) == '_';
-            // last char is an _
-            boolean lastCharDash = inputString.charAt(index + identifier.length()) == '_';
-
-            return  firstChar || lastChar || firstCharDash || lastCharDash;
-        }else
-            return false;
-    }
-
-    /**
-     * check if an operator is included in +=, -=, *=, /=
-     * @param inputString : input string
-     * @param index : index
-     * @return : return true if the character after index is equal to =
-     */
-    private boolean isNotOperator(String inputString, int index){
-        return inputString.charAt(index+1) == '=';
-    }
-
-    /**
-     * check if * is in ** or not
-     * @param inputString : input string
-     * @param index : index
-     * @return : true if the character after index is equal to *
-     */
-    private boolean isNotPowerOperator(String inputString, int index){
-        return inputString.charAt(index+1) == '*';
-    }
-
-    /**
-     * find line number of a node from input XML file
-     * @param node : xml node
-     * @return : line number of xml node
-     */
-    private String findXmlLineNumber(Node node){
-        return node.getUserData("lineNumber").toString();
-    }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,73 @@
+package be.intimals.pythonConverter;
+
+import java.io.IOException;
+
+/**
+ * Receives a converted tree as a stream of events in document order.
+ * The attributes of an element are given after its start, in the order of their names.
+ */
+public interface TreeHandler {
+
+    void startDocument() throws IOException;
+
+    void startElement(String name) throws IOException;
+
+    void attribute(String name, String value) throws IOException;
+
+    /**
+     * give a position attribute, ID, LineNr, EndLineNr, ColNr or EndColNr, whose value is known as an int
+     * @param name : name of the position
+     * @param value : value of the position
+     */
+    default void position(String name, int value) throws IOException {
+        attribute(name, String.valueOf(value));
+    }
+
+    void characters(String text) throws IOException;
+
+    void endElement() throws IOException;
+
+    void endDocument() throws IOException;
+
+    /**
+     * @return : a handler giving each event to two handlers
+     */
+    static TreeHandler both(TreeHandler first, TreeHandler second){
+        return new TreeHandler() {
+            public void startDocument() throws IOException {
+                first.startDocument();
+                second.startDocument();
+            }
+
+            public void startElement(String name) throws IOException {
+                first.startElement(name);
+                second.startElement(name);
+            }
+
+            public void attribute(String name, String value) throws IOException {
+                first.attribute(name, value);
+                second.attribute(name, value);
+            }
+
+            public void position(String name, int value) throws IOException {
+                first.position(name, value);
+                second.position(name, value);
+            }
+
+            public void characters(String text) throws IOException {
+                first.characters(text);
+                second.characters(text);
+            }
+
+            public void endElement() throws IOException {
+                first.endElement();
+                second.endElement();
+            }
+
+            public void endDocument() throws IOException {
+                first.endDocument();
+                second.endDocument();
+            }
+        };
+    }
+}
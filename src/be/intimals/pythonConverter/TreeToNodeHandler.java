@@ -0,0 +1,95 @@
+package be.intimals.pythonConverter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Give the events of a TreeHandler to a NodeHandler, so that a converter writing to a TreeHandler can be embedded.
+ * The start of a node is given when its attributes are known: the positions given as ints are the positions of
+ * the node, the other attributes are given in their order. The texts between two nodes are given as one leaf,
+ * with their lines joined, like CompactTree.write(NodeHandler).
+ */
+class TreeToNodeHandler implements TreeHandler {
+    private static final String[] POSITIONS = BinaryTreeWriter.POSITIONS;
+
+    private NodeHandler handler;
+    // start of the current node, given when its first child or its end is read
+    private String pendingLabel;
+    private int[] positions = new int[POSITIONS.length];
+    private List<String> attributes = new ArrayList<>();
+    // texts read since the last node
+    private StringBuilder text = new StringBuilder();
+
+    /**
+     * @param handler : handler of the nodes
+     */
+    TreeToNodeHandler(NodeHandler handler){
+        this.handler = handler;
+    }
+
+    public void startDocument(){
+    }
+
+    public void startElement(String name){
+        writeStart();
+        writeLeaf();
+        pendingLabel = name;
+        for(int i = 0; i < positions.length; ++i)
+            positions[i] = NodeHandler.NO_POSITION;
+        attributes.clear();
+    }
+
+    public void attribute(String name, String value){
+        attributes.add(name);
+        attributes.add(value);
+    }
+
+    public void position(String name, int value){
+        for(int i = 0; i < POSITIONS.length; ++i){
+            if(POSITIONS[i].equals(name)){
+                positions[i] = value;
+                return;
+            }
+        }
+        attribute(name, String.valueOf(value));
+    }
+
+    public void characters(String content){
+        writeStart();
+        text.append(content);
+    }
+
+    public void endElement(){
+        writeStart();
+        writeLeaf();
+        handler.endNode();
+    }
+
+    public void endDocument(){
+        writeLeaf();
+    }
+
+    /**
+     * give the start of the pending node and its other attributes
+     */
+    private void writeStart(){
+        if(pendingLabel == null)
+            return;
+        handler.startNode(pendingLabel, positions[0], positions[1], positions[2], positions[3], positions[4]);
+        for(int i = 0; i < attributes.size(); i += 2)
+            handler.attribute(attributes.get(i), attributes.get(i + 1));
+        pendingLabel = null;
+    }
+
+    /**
+     * give the texts read since the last node, with their lines joined
+     */
+    private void writeLeaf(){
+        if(text.length() == 0)
+            return;
+        String joined = XmlFormatter.joinLines(text);
+        text.setLength(0);
+        if(!joined.isEmpty())
+            handler.leaf(joined);
+    }
+}
@@ -1,31 +1,30 @@
 package be.intimals.pythonConverter;
 
-import org.w3c.dom.Document;
-
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class Utils {
+    // level of an output file which is not compressed
+    public static final int UNCOMPRESSED = -1;
+    public static final String GZIP_SUFFIX = ".gz";
+    private static final int BUFFER_SIZE = 1 << 16;
 
 
 
 
 
     /**
-     * collect file names from a directory
+     * collect file names from a directory, NAME.xml or NAME.xml.gz
      * @param directory
      * @param list
      */
     public static void populateFileList(File directory, ArrayList<String> list){
-        File[] files = directory.listFiles((dir, name) -> name.toLowerCase().endsWith(".xml"));
+        File[] files = directory.listFiles((dir, name) -> hasExtension(dir, name, ".xml"));
         ArrayList<String> fullNames = new ArrayList<>();
         for(int i=0; i<files.length; ++i)
             fullNames.add(files[i].getAbsolutePath());
@@ -35,8 +34,77 @@ public class Utils {
     }
 
 
-    public static int countLiteral(List<String> list, String identifier){
-        return Collections.frequency(list, identifier);
+    /**
+     * add the XML files which pyRegurgitator would export from the Python files (NAME.py or NAME.py.gz) of a
+     * directory and its sub-directories, the XML files do not need to exist
+     * @param directory : directory contains python files
+     * @param list : names of the XML files
+     */
+    public static void populatePythonFileList(File directory, ArrayList<String> list){
+        File[] files = directory.listFiles((dir, name) -> hasExtension(dir, name, ".py"));
+        for (File file : files) {
+            String pyFileName = stripGzipSuffix(file.getAbsolutePath());
+            list.add(pyFileName.substring(0, pyFileName.length() - 2) + "xml");
+        }
+        File[] directories = directory.listFiles(File::isDirectory);
+        for (File dir : directories) populatePythonFileList(dir, list);
+    }
+
+    /**
+     * @param dir : directory of the file
+     * @param name : name of the file
+     * @param extension : extension, in lower case
+     * @return : true if the name ends with the extension, or with the extension and the gzip suffix
+     * when the file is not also there without the suffix
+     */
+    private static boolean hasExtension(File dir, String name, String extension){
+        String lowerName = name.toLowerCase();
+        if(lowerName.endsWith(extension))
+            return true;
+        return lowerName.endsWith(extension + GZIP_SUFFIX)
+                && !new File(dir, name.substring(0, name.length() - GZIP_SUFFIX.length())).exists();
+    }
+
+    /**
+     * @param fileName : name of a file, compressed with gzip or not
+     * @return : the name without the gzip suffix
+     */
+    public static String stripGzipSuffix(String fileName){
+        if(fileName.toLowerCase().endsWith(GZIP_SUFFIX))
+            return fileName.substring(0, fileName.length() - GZIP_SUFFIX.length());
+        return fileName;
+    }
+
+    /**
+     * @param xmlFile : input xml file, NAME.xml or NAME.xml.gz
+     * @return : name of its python file, NAME.py
+     */
+    public static String getPyFileName(String xmlFile){
+        String fileName = stripGzipSuffix(xmlFile);
+        return fileName.substring(0, fileName.length() - 3) + "py";
+    }
+
+    /**
+     * @param xmlFile : input xml file, NAME.xml or NAME.xml.gz
+     * @return : its python file, NAME.py or NAME.py.gz if only this one exists
+     */
+    public static String getPyFile(String xmlFile){
+        String pyFile = getPyFileName(xmlFile);
+        if(!new File(pyFile).exists() && new File(pyFile + GZIP_SUFFIX).exists())
+            return pyFile + GZIP_SUFFIX;
+        return pyFile;
+    }
+
+    /**
+     * @param pyFile : python file, NAME.py or NAME.py.gz
+     * @return : its input xml file, NAME.xml or NAME.xml.gz if only this one exists
+     */
+    public static String getXmlFile(String pyFile){
+        String fileName = stripGzipSuffix(pyFile);
+        String xmlFile = fileName.substring(0, fileName.length() - 2) + "xml";
+        if(!new File(xmlFile).exists() && new File(xmlFile + GZIP_SUFFIX).exists())
+            return xmlFile + GZIP_SUFFIX;
+        return xmlFile;
     }
 
     public static int countLines(String text){
@@ -44,53 +112,117 @@ public class Utils {
     }
 
     /**
-     * get a reading stream from input XML
+     * same as String.indexOf for any sequence of characters
+     * @param text : text
+     * @param str : searched string
+     * @param fromIndex : index to start the search from
+     * @return : index of the first occurrence of str from fromIndex, -1 if there is none
+     */
+    public static int indexOf(CharSequence text, String str, int fromIndex){
+        int length = text.length();
+        if(fromIndex >= length)
+            return str.isEmpty() ? length : -1;
+        if(fromIndex < 0)
+            fromIndex = 0;
+        int last = length - str.length();
+        for(int i = fromIndex; i <= last; ++i){
+            int j = 0;
+            while(j < str.length() && text.charAt(i + j) == str.charAt(j))
+                ++j;
+            if(j == str.length())
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * get a reading stream from input XML, wrapped in a SourceFile element.
+     * The file is not loaded in memory, it is read as UTF-8 bytes between the start and the end of the wrapper.
      * @param fileName
      * @return
+     * @throws IOException
      */
-    public static InputStream getXMLStream(String fileName) {
-        String xmlString = xmlToString(fileName);
-        InputStream is = new ByteArrayInputStream(xmlString.getBytes());
-        return is;
+    public static InputStream getXMLStream(String fileName) throws IOException {
+        return getXMLStream(openInputFile(fileName), getPyFileName(fileName));
     }
 
     /**
-     * convert XML to a string
+     * open an input file, a file compressed with gzip is decompressed whatever its name
      * @param fileName
-     * @return
+     * @return : buffered stream of the content of the file
+     * @throws IOException
+     */
+    public static InputStream openInputFile(String fileName) throws IOException {
+        return decompress(Files.newInputStream(Paths.get(fileName)));
+    }
+
+    /**
+     * @param in : input stream, compressed with gzip or not
+     * @return : buffered stream of the decompressed content, closing it closes the input stream
+     * @throws IOException
      */
-    private static String xmlToString(String fileName){
-        String xmlString = "";
+    public static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        // the two first bytes of a gzip stream
+        buffered.mark(2);
+        int b1 = buffered.read();
+        int b2 = buffered.read();
+        buffered.reset();
+        if(b1 == (GZIPInputStream.GZIP_MAGIC & 0xFF) && b2 == (GZIPInputStream.GZIP_MAGIC >> 8))
+            return new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE);
+        return buffered;
+    }
+
+    /**
+     * create an output file, compressed with gzip if a level is given
+     * @param fileName
+     * @param gzipLevel : level of the deflater from 0 (fastest) to 9 (smallest), UNCOMPRESSED to write the file as it is
+     * @return : buffered stream of the file
+     * @throws IOException
+     */
+    public static OutputStream createOutputFile(String fileName, int gzipLevel) throws IOException {
+        OutputStream out = new FileOutputStream(fileName);
+        if(gzipLevel == UNCOMPRESSED)
+            return new BufferedOutputStream(out, BUFFER_SIZE);
         try {
-            Reader fileReader = new FileReader(fileName);
-            BufferedReader bufReader = new BufferedReader(fileReader);
-            StringBuilder sb = new StringBuilder();
-            sb.append("<SourceFile Language=\"Python\" FullName=\""+fileName.substring(0,fileName.length()-4)+".py\">");
-            String line = bufReader.readLine();
-            while( line != null){
-                sb.append(line).append("\n");
-                line = bufReader.readLine();
-            }
-            sb.append("</SourceFile>");
-            xmlString = sb.toString();
-        }catch (Exception e){
-            System.out.println("xml to string error");
+            return new LevelGZIPOutputStream(out, gzipLevel);
+        }catch (IOException e){
+            out.close();
+            throw e;
         }
-        return xmlString;
     }
 
     /**
-     * white DOM object to file
-     * @param doc
-     * @param outputFile
-     * @throws TransformerException
+     * wrap an input XML in a SourceFile element
+     * @param xml : UTF-8 content of the input XML
+     * @param pyFileName : name of the python file in the SourceFile element
+     * @return : stream of the wrapped XML, closing it closes the input XML
      */
-    public static void writeDomObjectToFile(Document doc, String outputFile) throws TransformerException {
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        DOMSource domSource = new DOMSource(doc);
-        StreamResult streamResult = new StreamResult(new File(outputFile));
-        transformer.transform(domSource, streamResult);
+    public static InputStream getXMLStream(InputStream xml, String pyFileName) {
+        return new SourceFileStream("<SourceFile Language=\"Python\" FullName=\""+pyFileName+"\">", xml);
+    }
+
+    /**
+     * get a buffered UTF-8 writer for an output XML
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    public static Writer getXMLWriter(String fileName) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * get a buffered UTF-8 writer for an output XML, compressed with gzip if a level is given
+     * @param fileName
+     * @param gzipLevel : level of the deflater, UNCOMPRESSED to write the file as it is
+     * @return
+     * @throws IOException
+     */
+    public static Writer getXMLWriter(String fileName, int gzipLevel) throws IOException {
+        if(gzipLevel == UNCOMPRESSED)
+            return getXMLWriter(fileName);
+        return new BufferedWriter(new OutputStreamWriter(createOutputFile(fileName, gzipLevel), StandardCharsets.UTF_8));
     }
 
 
@@ -99,20 +231,13 @@ public class Utils {
      * @param fileName
      * @return
      */
-    public static List<String> readPyFile(String fileName){
-        List<String> results = new LinkedList<>();
-        try {
-            Reader fileReader = new FileReader(fileName);
-            BufferedReader bufReader = new BufferedReader(fileReader);
-            String line = bufReader.readLine();
-            while( line != null){
-                results.add(line);
-                line = bufReader.readLine();
-            }
+    public static PyLineIndex readPyFile(String fileName){
+        try (InputStream in = openInputFile(fileName)) {
+            return new PyLineIndex(in.readAllBytes());
         }catch (Exception e){
             System.out.println("Read python file error");
         }
-        return results;
+        return new PyLineIndex(new byte[0]);
     }
 
     /**
@@ -121,32 +246,141 @@ public class Utils {
      * @param newFileName
      */
     public static void copyPyFile(String fileName, String newFileName){
+        copyPyFile(fileName, newFileName, UNCOMPRESSED);
+    }
+
+    /**
+     * Copy python code to new file
+     * @param fileName
+     * @param newFileName
+     * @param gzipLevel : level of the deflater, UNCOMPRESSED to write the file as it is
+     */
+    public static void copyPyFile(String fileName, String newFileName, int gzipLevel){
         try {
-            StringBuilder sb = new StringBuilder();
+            String pyCode = readPyCode(fileName);
+            //write python code to new file
+            try (Writer fw = new OutputStreamWriter(createOutputFile(newFileName, gzipLevel), StandardCharsets.UTF_8)) {
+                fw.write(pyCode);
+            }
+        }catch (Exception e){
+            System.out.println("Read python file error");
+        }
+    }
+
+    /**
+     * Copy python code to a writer
+     * @param fileName
+     * @param out : writer, not closed
+     */
+    public static void copyPyFile(String fileName, Writer out){
+        try {
+            out.write(readPyCode(fileName));
+        }catch (Exception e){
+            System.out.println("Read python file error");
+        }
+    }
+
+    /**
+     * read python code as it is, to be parsed
+     * @param fileName
+     * @return : UTF-8 content of the file
+     * @throws IOException
+     */
+    public static String readPySource(String fileName) throws IOException {
+        try (InputStream in = openInputFile(fileName)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
 
-            Reader fileReader = new FileReader(fileName);
-            BufferedReader bufReader = new BufferedReader(fileReader);
+    /**
+     * read UTF-8 python code, the lines end with \n
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    private static String readPyCode(String fileName) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        try (BufferedReader bufReader = new BufferedReader(new InputStreamReader(openInputFile(fileName), StandardCharsets.UTF_8))) {
             String line = bufReader.readLine();
             while( line != null){
-                StringBuilder newString = new StringBuilder();
-                for(int i=0; i<line.length(); ++i){
-                    newString.append(line.charAt(i));
-                }
                 //append new line to sb
-                sb.append(newString.toString());
+                sb.append(line);
                 sb.append("\n");
                 //read next line
                 line = bufReader.readLine();
             }
-            //write python code to new file
-            FileWriter fw = new FileWriter(newFileName);
-            fw.write(sb.toString());
-            fw.flush();
-            fw.close();
-        }catch (Exception e){
-            System.out.println("Read python file error");
         }
+        return sb.toString();
     }
 
 
+    /**
+     * gzip stream with the level of its deflater
+     */
+    private static class LevelGZIPOutputStream extends GZIPOutputStream {
+        LevelGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+
+    /**
+     * content of an XML between the start and the end of a SourceFile element,
+     * like when the content is read line by line, the last line ends with a new line
+     */
+    private static class SourceFileStream extends InputStream {
+        private byte[] start;
+        private InputStream content;
+        private byte[] end;
+        // position in start, then in end
+        private int position = 0;
+        private int last = '\n';
+        private byte[] single = new byte[1];
+
+        SourceFileStream(String start, InputStream content){
+            this.start = start.getBytes(StandardCharsets.UTF_8);
+            this.content = content;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int n = read(single, 0, 1);
+            return n < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0)
+                return 0;
+            if(start != null){
+                if(position < start.length)
+                    return copy(start, b, off, len);
+                start = null;
+                position = 0;
+            }
+            if(end == null){
+                int n = content.read(b, off, len);
+                if(n > 0)
+                    last = b[off + n - 1];
+                if(n >= 0)
+                    return n;
+                end = (last == '\n' || last == '\r' ? "</SourceFile>" : "\n</SourceFile>").getBytes(StandardCharsets.UTF_8);
+            }
+            if(position == end.length)
+                return -1;
+            return copy(end, b, off, len);
+        }
+
+        private int copy(byte[] from, byte[] b, int off, int len){
+            int n = Math.min(len, from.length - position);
+            System.arraycopy(from, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            content.close();
+        }
+    }
 }
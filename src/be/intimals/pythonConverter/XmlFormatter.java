@@ -1,57 +1,205 @@
 package be.intimals.pythonConverter;
 
-import java.io.*;
-import java.io.FileWriter;
-
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
 
 /**
  * Utility Class for formatting XML
  *
+ * Writes pretty XML in one pass from a stream of events: elements are indented by 2 spaces,
+ * an element containing only text is written on one line, the lines of a text are trimmed and joined.
+ * The result is the same as writing the document, trimming its lines and indenting it with a Transformer.
+ *
  * @author Pankaj
  *
  */
-public class XmlFormatter {
-
-    private static String sep = "/";//File.separator;
-
-    //format one xml file
-    public static void format(String inPath, String outPath){
-        try{
-            BufferedReader br = new BufferedReader(new FileReader(inPath));
-            String fileContent = "";
-            String uniCode = "\uFEFF";
-            String line = br.readLine();
-            if(line.contains(uniCode)){
-                line = line.substring(1);
-            }
-            fileContent += line.trim();
-            while ((line = br.readLine()) != null) {
-                if( ! line.isEmpty() )
-                    fileContent += line.trim();
+public class XmlFormatter implements TreeHandler {
+
+    private static int indentAmount = 2;
+
+    private Writer out;
+    // names of the open elements, and whether they have element children
+    private String[] names = new String[32];
+    private boolean[] hasElementChild = new boolean[32];
+    private int depth = 0;
+    // the start tag of the last element is not closed yet
+    private boolean startTagOpen = false;
+    // text of the current element which is not written yet
+    private StringBuilder text = new StringBuilder();
+
+    public XmlFormatter(Writer out){
+        this.out = out;
+    }
+
+    public void startDocument() throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    }
+
+    public void endDocument() throws IOException {
+        out.flush();
+    }
+
+    public void startElement(String name) throws IOException {
+        if(depth > 0)
+            hasElementChild[depth - 1] = true;
+        closeStartTag();
+        writeText();
+        newLine(depth);
+        out.write('<');
+        out.write(name);
+        if(depth == names.length){
+            names = Arrays.copyOf(names, depth * 2);
+            hasElementChild = Arrays.copyOf(hasElementChild, depth * 2);
+        }
+        names[depth] = name;
+        hasElementChild[depth] = false;
+        ++depth;
+        startTagOpen = true;
+    }
+
+    /**
+     * add an attribute to the current start tag, attributes must be added in the order of their names
+     */
+    public void attribute(String name, String value) throws IOException {
+        out.write(' ');
+        out.write(name);
+        out.write("=\"");
+        escape(value, true);
+        out.write('"');
+    }
+
+    /**
+     * add a position to the current start tag, its digits need no escaping
+     */
+    public void position(String name, int value) throws IOException {
+        out.write(' ');
+        out.write(name);
+        out.write("=\"");
+        out.write(Integer.toString(value));
+        out.write('"');
+    }
+
+    public void characters(String content){
+        text.append(content);
+    }
+
+    public void endElement() throws IOException {
+        int level = depth - 1;
+        if(hasElementChild[level]){
+            writeText();
+            newLine(level);
+            out.write("</");
+            out.write(names[level]);
+            out.write('>');
+        }else{
+            joinLines();
+            if(text.length() == 0){
+                out.write("/>");
+            }else{
+                out.write('>');
+                escape(text, false);
+                text.setLength(0);
+                out.write("</");
+                out.write(names[level]);
+                out.write('>');
             }
+            startTagOpen = false;
+        }
+        names[level] = null;
+        depth = level;
+    }
+
+    private void closeStartTag() throws IOException {
+        if(startTagOpen){
+            out.write('>');
+            startTagOpen = false;
+        }
+    }
 
-            Transformer transformer = TransformerFactory.newInstance().newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, "yes");
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-            StringWriter stringWriter = new StringWriter();
-            transformer.transform(
-                    new StreamSource(new StringReader(fileContent)),
-                    new StreamResult(stringWriter));
-
-            FileWriter file = new FileWriter(outPath);
-            file.write(stringWriter.toString().trim());
-            file.flush();
-            file.close();
-        }catch (Exception e){
-            System.out.println("Exception while reading file " + inPath);
-            e.printStackTrace();
-            System.exit(-1);
+    /**
+     * write the pending text on its own line, it is a sibling of elements
+     */
+    private void writeText() throws IOException {
+        joinLines();
+        if(text.length() > 0){
+            closeStartTag();
+            newLine(depth);
+            escape(text, false);
+            text.setLength(0);
+        }
+    }
+
+    /**
+     * remove new lines from the pending text together with the spaces around them
+     */
+    private void joinLines(){
+        if(text.indexOf("\n") < 0)
+            return;
+        String joined = joinLines(text);
+        text.setLength(0);
+        text.append(joined);
+    }
+
+    /**
+     * @param text : text
+     * @return : the text without its new lines and the spaces around them
+     */
+    static String joinLines(CharSequence text){
+        String[] lines = text.toString().split("\n", -1);
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < lines.length; ++i){
+            String line = lines[i];
+            int begin = 0;
+            int end = line.length();
+            if(i > 0)
+                while(begin < end && isBlank(line.charAt(begin))) ++begin;
+            if(i < lines.length - 1)
+                while(end > begin && isBlank(line.charAt(end - 1))) --end;
+            sb.append(line, begin, end);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isBlank(char c){
+        return c == ' ' || c == '\t';
+    }
+
+    private void newLine(int level) throws IOException {
+        out.write('\n');
+        for(int i = 0; i < level * indentAmount; ++i)
+            out.write(' ');
+    }
+
+    /**
+     * write a text or an attribute value with the escaped characters
+     */
+    private void escape(CharSequence value, boolean inAttribute) throws IOException {
+        for(int i = 0; i < value.length(); ++i){
+            char c = value.charAt(i);
+            switch (c){
+                case '&': out.write("&amp;"); break;
+                case '<': out.write("&lt;"); break;
+                case '>': out.write("&gt;"); break;
+                case '\r': out.write("&#13;"); break;
+                case '"':
+                    if(inAttribute) out.write("&quot;"); else out.write(c);
+                    break;
+                case '\n':
+                case '\t':
+                    if(inAttribute) out.write("&#" + (int) c + ";"); else out.write(c);
+                    break;
+                default:
+                    if(Character.isHighSurrogate(c) && i + 1 < value.length()
+                            && Character.isLowSurrogate(value.charAt(i + 1))){
+                        out.write("&#" + Character.toCodePoint(c, value.charAt(i + 1)) + ";");
+                        ++i;
+                    }else if(!inAttribute && c >= 0x7F && c <= 0x9F){
+                        out.write("&#" + (int) c + ";");
+                    }else{
+                        out.write(c);
+                    }
+            }
         }
     }
-}
\ No newline at end of file
+}